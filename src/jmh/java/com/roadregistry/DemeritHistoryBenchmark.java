@@ -0,0 +1,69 @@
+package com.roadregistry;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// One demerit update on a stored history: read column 7, add an offence, total the last two years
+// and write the history back. Compares DemeritHistory with the HashMap<LocalDate, Integer> code
+// that addDemeritPoints used before.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DemeritHistoryBenchmark {
+
+    @Param({"4", "32"})
+    int entries;
+
+    private String stored;
+    private LocalDate offenceDate;
+
+    @Setup
+    public void buildHistory() {
+        Random random = new Random(42);
+        DemeritHistory history = new DemeritHistory();
+        for (int i = 0; i < entries; i++) {
+            history.put(LocalDate.now().minusDays(random.nextInt(5 * 365)), 1 + random.nextInt(6));
+        }
+        stored = history.format();
+        offenceDate = LocalDate.now().minusDays(3);
+    }
+
+    @Benchmark
+    public String hashMap() {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+        HashMap<LocalDate, Integer> allDemerits = new HashMap<>();
+        for (String entry : stored.split(";")) {
+            String[] pair = entry.split(":");
+            if (pair.length == 2) {
+                allDemerits.put(LocalDate.parse(pair[0].trim(), formatter), Integer.parseInt(pair[1].trim()));
+            }
+        }
+        allDemerits.put(offenceDate, 3);
+
+        int totalRecentPoints = allDemerits.entrySet().stream()
+                .filter(e -> e.getKey().isAfter(LocalDate.now().minusYears(2)))
+                .mapToInt(Map.Entry::getValue)
+                .sum();
+
+        List<String> updatedEntries = new ArrayList<>();
+        for (Map.Entry<LocalDate, Integer> entry : allDemerits.entrySet()) {
+            updatedEntries.add(entry.getKey().format(formatter) + ":" + entry.getValue());
+        }
+        return totalRecentPoints + String.join(";", updatedEntries);
+    }
+
+    @Benchmark
+    public String demeritHistory() {
+        DemeritHistory history = DemeritHistory.parse(stored);
+        history.put(offenceDate, 3);
+        int totalRecentPoints = history.recentPoints(LocalDate.now());
+        return totalRecentPoints + history.format();
+    }
+}
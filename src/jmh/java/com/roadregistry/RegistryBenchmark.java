@@ -0,0 +1,98 @@
+package com.roadregistry;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// Throughput of the three registry operations of Person on a generated registry. The registry
+// size is a parameter; pick one with "-p size=1000000". Run with "-prof gc" to see the allocation
+// rate per operation. The 10M registry needs a large heap, see the fork settings below.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx12g"})
+public class RegistryBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int size;
+
+    private Path directory;
+    private String path;
+    private PersonRepository repository;
+    private final AtomicInteger nextNewPerson = new AtomicInteger();
+    private String[] offenceDates;
+
+    // Per thread source of random people and dates
+    @State(Scope.Thread)
+    public static class Picker {
+        final Random random = new Random();
+    }
+
+    @Setup(Level.Trial)
+    public void createRegistry() throws IOException {
+        directory = Files.createTempDirectory("registry-bench");
+        path = directory.resolve("persons.txt").toString();
+        RegistryGenerator.write(Path.of(path), size, 42);
+        nextNewPerson.set(size);
+
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+        offenceDates = new String[1000];
+        for (int i = 0; i < offenceDates.length; i++) {
+            offenceDates[i] = LocalDate.now().minusDays(i).format(formatter);
+        }
+
+        // load the registry up front so the first iteration does not measure it
+        repository = PersonRepository.forFile(path);
+        repository.size();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteRegistry() throws IOException {
+        PersonRepository.evict(path);
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public boolean addPerson() {
+        int n = nextNewPerson.getAndIncrement();
+        Person person = new Person(RegistryGenerator.personID(n), "Danush", "Bala",
+                "1|Elizabeth Street|Melbourne|Victoria|Australia", "12-11-1989");
+        person.setFilePath(path);
+        return person.addPerson();
+    }
+
+    @Benchmark
+    public boolean updatePersonalDetails(Picker picker) throws IOException {
+        // change the last name of an existing person, everything else stays as stored
+        PersonRecord stored = repository.find(RegistryGenerator.personID(picker.random.nextInt(size)));
+        String lastName = stored.getLastName().endsWith("x") ? stored.getLastName().substring(0, stored.getLastName().length() - 1) : stored.getLastName() + "x";
+        Person person = new Person(stored.getPersonID(), stored.getFirstName(), lastName, stored.getAddress(), stored.getBirthday());
+        person.setFilePath(path);
+        return person.updatePersonalDetails();
+    }
+
+    @Benchmark
+    public String addDemeritPoints(Picker picker) {
+        Person person = new Person(null, null, null, null, null);
+        person.setFilePath(path);
+        return person.addDemeritPoints(RegistryGenerator.personID(picker.random.nextInt(size)),
+                1 + picker.random.nextInt(6), offenceDates[picker.random.nextInt(offenceDates.length)]);
+    }
+
+    @Benchmark
+    public PersonRecord lookup(Picker picker) throws IOException {
+        return repository.find(RegistryGenerator.personID(picker.random.nextInt(size)));
+    }
+}
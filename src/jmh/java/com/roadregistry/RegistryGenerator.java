@@ -0,0 +1,79 @@
+package com.roadregistry;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+// Builds synthetic registries of valid people for the benchmarks. Every generated person passes
+// the ID, address and date checks of Person, IDs are unique, and about half of the people get a
+// demerit history with the suspension status worked out the same way addDemeritPoints does.
+public class RegistryGenerator {
+    private static final String[] FIRST_NAMES = {"Danush", "Mia", "Tom", "Nina", "Lewis", "Ava", "George", "Carlos", "Emma", "Liam"};
+    private static final String[] LAST_NAMES = {"Bala", "Chen", "Smith", "Brown", "Hamilton", "Williams", "Russell", "Sainz", "Stone", "Jones"};
+    private static final String[] STREETS = {"Elizabeth Street", "John St", "King St", "Bourke St", "Track Rd", "Queen St", "Ocean Ave"};
+    private static final String[] CITIES = {"Melbourne", "Geelong", "Ballarat", "Bendigo", "Shepparton", "Mildura"};
+    private static final String BASE36 = "0123456789abcdefghijklmnopqrstuvwxyz";
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    private RegistryGenerator() {
+    }
+
+    // Unique valid ID for the n-th person: two digits 2-9, four letters or digits, two special
+    // characters and two capital letters
+    public static String personID(int n) {
+        char[] id = new char[10];
+        id[0] = (char) ('2' + n % 8);
+        id[1] = (char) ('2' + (n / 8) % 8);
+        int rest = n / 64;
+        for (int i = 2; i < 6; i++) {
+            id[i] = BASE36.charAt(rest % 36);
+            rest /= 36;
+        }
+        id[6] = '$';
+        id[7] = '#';
+        id[8] = (char) ('A' + rest % 26);
+        id[9] = (char) ('A' + (rest / 26) % 26);
+        return new String(id);
+    }
+
+    // A random valid person with the n-th ID
+    public static PersonRecord person(int n, Random random) {
+        String address = (1 + random.nextInt(300)) + "|" + STREETS[random.nextInt(STREETS.length)] + "|"
+                + CITIES[random.nextInt(CITIES.length)] + "|Victoria|Australia";
+        String birthday = LocalDate.of(1950, 1, 1).plusDays(random.nextInt(58 * 365)).format(FORMATTER);
+        PersonRecord record = PersonRecord.of(personID(n), FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+                LAST_NAMES[random.nextInt(LAST_NAMES.length)], address, birthday, "false");
+        if (random.nextBoolean()) {
+            return record;
+        }
+
+        DemeritHistory history = new DemeritHistory();
+        int offences = 1 + random.nextInt(4);
+        for (int i = 0; i < offences; i++) {
+            history.put(LocalDate.now().minusDays(random.nextInt(3 * 365)), 1 + random.nextInt(6));
+        }
+        return Person.withDemerits(record, history, Person.recentPoints(history));
+    }
+
+    // Writes a registry of the given size in the CSV layout
+    public static void write(Path file, int size, long seed) throws IOException {
+        Random random = new Random(seed);
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int n = 0; n < size; n++) {
+                writer.write(person(n, random).getLine());
+                writer.newLine();
+            }
+        }
+    }
+
+    // Usage: RegistryGenerator <size> <file>
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: RegistryGenerator <size> <file>");
+            return;
+        }
+        write(Path.of(args[1]), Integer.parseInt(args[0]), 42);
+    }
+}
@@ -0,0 +1,91 @@
+package com.roadregistry;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// The two reads of a CSV registry file that go through MappedPersonFile, against the
+// BufferedReader loop they replaced. "load" turns every row into a PersonRecord, the way
+// PersonRepository loads a file without a current snapshot. "find" looks up one person the way
+// StreamingRegistryFile.find does in streaming mode, without loading the registry. Pick the
+// registry size with "-p size=1000000" and run with "-prof gc" to compare the allocation.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx12g"})
+public class RegistryLoadBenchmark {
+
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"mapped", "reader"})
+    String reader;
+
+    private Path directory;
+    private Path file;
+
+    // Per thread source of random people
+    @State(Scope.Thread)
+    public static class Picker {
+        final Random random = new Random();
+    }
+
+    @Setup(Level.Trial)
+    public void createRegistry() throws IOException {
+        directory = Files.createTempDirectory("registry-load-bench");
+        file = directory.resolve("persons.txt");
+        RegistryGenerator.write(file, size, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteRegistry() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        int[] rows = {0};
+        if (reader.equals("mapped")) {
+            MappedPersonFile.forEach(file, record -> rows[0]++);
+            return rows[0];
+        }
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                PersonRecord.parse(line);
+                rows[0]++;
+            }
+        }
+        return rows[0];
+    }
+
+    @Benchmark
+    public PersonRecord find(Picker picker) throws IOException {
+        String personID = RegistryGenerator.personID(picker.random.nextInt(size));
+        if (reader.equals("mapped")) {
+            return MappedPersonFile.find(file, personID);
+        }
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                PersonRecord record = PersonRecord.parse(line);
+                if (record.getPersonID().equals(personID)) return record;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,64 @@
+package com.roadregistry;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Time from opening a registry until the first lookup can be answered, as after a restart. With
+// "snapshot" the rows are loaded from the RegistrySnapshot written by a checkpoint, with "file" the
+// CSV registry is read. Every invocation starts from the files on disk, so each measures one cold
+// load; pick the registry size with "-p size=1000000".
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx12g"})
+public class StartupBenchmark {
+
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"file", "snapshot"})
+    String source;
+
+    private Path directory;
+    private String path;
+
+    @Setup(Level.Trial)
+    public void createRegistry() throws IOException {
+        directory = Files.createTempDirectory("registry-startup-bench");
+        path = directory.resolve("persons.txt").toString();
+        RegistryGenerator.write(Path.of(path), size, 42);
+        if (source.equals("snapshot")) {
+            PersonRepository.forFile(path).checkpoint();
+        }
+    }
+
+    // Forget the loaded registry so the next invocation has to load it again
+    @Setup(Level.Invocation)
+    public void forgetRegistry() throws IOException {
+        PersonRepository.evict(path);
+        if (source.equals("file")) {
+            // the periodic checkpoint may have written one in the meantime
+            Files.deleteIfExists(Path.of(path + ".snap"));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteRegistry() throws IOException {
+        PersonRepository.evict(path);
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public PersonRecord timeToReady() throws IOException {
+        return PersonRepository.forFile(path).find(RegistryGenerator.personID(size / 2));
+    }
+}
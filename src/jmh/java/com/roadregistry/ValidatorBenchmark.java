@@ -0,0 +1,74 @@
+package com.roadregistry;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of the field checks used by addPerson and updatePersonalDetails, on accepted and rejected
+// input, next to the String.matches versions they replaced. Run with "-prof gc" to see how much
+// each check allocates.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidatorBenchmark {
+
+    @Param({"valid", "invalid"})
+    String input;
+
+    private String id;
+    private String address;
+    private String date;
+
+    @Setup
+    public void pickInput() {
+        if (input.equals("valid")) {
+            id = "36cc$%xyER";
+            address = "1|Elizabeth Street|Melbourne|Victoria|Australia";
+            date = "12-11-1989";
+        } else {
+            id = "36ccxyzyER";
+            address = "34A|Church Road|Melbourne|NSW|Australia";
+            date = "1989-11-12";
+        }
+    }
+
+    @Benchmark
+    public boolean isValidID() {
+        return Person.isValidID(id);
+    }
+
+    @Benchmark
+    public boolean isValidAddress() {
+        return Person.isValidAddress(address);
+    }
+
+    @Benchmark
+    public boolean isValidDate() {
+        return Person.isValidDate(date);
+    }
+
+    @Benchmark
+    public boolean regexIsValidID() {
+        if (id.length() != 10) return false;
+        if (!id.substring(0, 2).matches("[2-9]{2}")) return false;
+        if (!id.substring(8).matches("[A-Z]{2}")) return false;
+        int specialCount = 0;
+        for (char c : id.substring(2, 8).toCharArray()) {
+            if (!Character.isLetterOrDigit(c)) specialCount++;
+        }
+        return specialCount >= 2;
+    }
+
+    @Benchmark
+    public boolean regexIsValidAddress() {
+        return address.matches("\\d+\\|[^|]+\\|[^|]+\\|Victoria\\|[^|]+");
+    }
+
+    @Benchmark
+    public boolean regexIsValidDate() {
+        return date.matches("\\d{2}-\\d{2}-\\d{4}");
+    }
+}
@@ -0,0 +1,346 @@
+package com.roadregistry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+// Compact binary form of the registry, used instead of the CSV layout when the registry file
+// name ends with ".bin". Dates are stored as epoch days, demerit points as single bytes and the
+// personID as a fixed width 10 byte key. A sorted index of all IDs at the end of the file lets a
+// single person be found by binary search without reading the other records; PersonRepository
+// answers lookups through it until it has loaded the rows.
+//
+// Layout:
+//   header   "RRB1", int version, int record count
+//   records  byte kind, then for a person: 10 byte ID, first name, last name, address (string),
+//            int birthday, byte suspended, byte has demerit column, int demerit count,
+//            (int date, byte points) per demerit; for a raw line: the line (string)
+//   index    int entry count, then (10 byte ID, long record offset) sorted by ID, for every
+//            record whose ID is exactly 10 single byte characters, raw lines included
+//   trailer  long index offset
+//
+// A string is an int byte length followed by the UTF-8 bytes, so a field is not limited to the
+// 64 KB of writeUTF.
+//
+// Rows that would not come back exactly the same from the binary fields (for example a malformed
+// line) are stored as raw lines so that converting to binary and back never changes the registry.
+public class BinaryRegistryFile {
+    private static final byte[] MAGIC = {'R', 'R', 'B', '1'};
+    private static final int VERSION = 1;
+    private static final int ID_WIDTH = 10;
+    private static final int INDEX_ENTRY_SIZE = ID_WIDTH + Long.BYTES;
+    private static final byte PERSON = 0;
+    private static final byte RAW_LINE = 1;
+
+    private BinaryRegistryFile() {
+    }
+
+    // Writes the records to the given file in the binary layout
+    public static void write(List<PersonRecord> records, Path path) throws IOException {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+        List<IndexEntry> index = new ArrayList<>();
+
+        try (CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+             DataOutputStream out = new DataOutputStream(counter)) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(records.size());
+
+            for (PersonRecord record : records) {
+                long offset = counter.count;
+                Encoded encoded = encode(record, formatter);
+                if (encoded == null) {
+                    out.writeByte(RAW_LINE);
+                    writeString(out, record.getLine());
+                    if (fitsIndex(record.getPersonID())) index.add(new IndexEntry(record.getPersonID(), offset));
+                    continue;
+                }
+
+                out.writeByte(PERSON);
+                out.write(encoded.id);
+                writeString(out, record.getFirstName());
+                writeString(out, record.getLastName());
+                writeString(out, record.getAddress());
+                out.writeInt(encoded.birthday);
+                out.writeByte(record.isSuspended() ? 1 : 0);
+                out.writeByte(record.fieldCount() > 6 ? 1 : 0);
+                out.writeInt(encoded.demeritDays.length);
+                for (int i = 0; i < encoded.demeritDays.length; i++) {
+                    out.writeInt(encoded.demeritDays[i]);
+                    out.writeByte(encoded.demeritPoints[i]);
+                }
+                index.add(new IndexEntry(record.getPersonID(), offset));
+            }
+
+            // rows sharing an ID keep their file order so a lookup finds the first one
+            index.sort(Comparator.comparing(IndexEntry::personID).thenComparingLong(IndexEntry::offset));
+            long indexOffset = counter.count;
+            out.writeInt(index.size());
+            for (IndexEntry entry : index) {
+                out.write(entry.personID().getBytes(StandardCharsets.ISO_8859_1));
+                out.writeLong(entry.offset());
+            }
+            out.writeLong(indexOffset);
+        }
+    }
+
+    // Reads all records of a binary registry file in file order
+    public static List<PersonRecord> read(Path path) throws IOException {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            readHeader(in);
+            int count = in.readInt();
+            List<PersonRecord> records = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                records.add(readRecord(in, formatter));
+            }
+            return records;
+        }
+    }
+
+    // Finds the first record with the given ID through the sorted index, or returns null
+    public static PersonRecord find(Path path, String personID) throws IOException {
+        if (!fitsIndex(personID)) return null;
+        byte[] key = personID.getBytes(StandardCharsets.ISO_8859_1);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            readHeader(new DataInputStream(Channels.newInputStream(channel.position(0))));
+            long indexOffset = readLong(channel, channel.size() - Long.BYTES);
+            int entries = readInt(channel, indexOffset);
+            long entriesStart = indexOffset + Integer.BYTES;
+
+            // leftmost entry with a key not smaller than the one searched for
+            int low = 0;
+            int high = entries;
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                readFully(channel, entry.clear(), entriesStart + (long) middle * INDEX_ENTRY_SIZE);
+                if (compareKey(entry.array(), key) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            if (low == entries) return null;
+
+            readFully(channel, entry.clear(), entriesStart + (long) low * INDEX_ENTRY_SIZE);
+            if (compareKey(entry.array(), key) != 0) return null;
+            long offset = entry.getLong(ID_WIDTH);
+
+            channel.position(offset);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            return readRecord(in, DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+        }
+    }
+
+    // Converts a registry file from the CSV layout into the binary layout
+    public static void fromCsv(Path csv, Path binary) throws IOException {
+        List<PersonRecord> records = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(csv)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                records.add(PersonRecord.parse(line));
+            }
+        }
+        write(records, binary);
+    }
+
+    // Converts a registry file from the binary layout back into the CSV layout
+    public static void toCsv(Path binary, Path csv) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+            for (PersonRecord record : read(binary)) {
+                writer.write(record.getLine());
+                writer.newLine();
+            }
+        }
+    }
+
+    // Command line converter: "to-binary persons.txt persons.bin" or "to-csv persons.bin persons.txt"
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 || !(args[0].equals("to-binary") || args[0].equals("to-csv"))) {
+            System.out.println("Usage: BinaryRegistryFile to-binary|to-csv <source> <target>");
+            return;
+        }
+        if (args[0].equals("to-binary")) {
+            fromCsv(Path.of(args[1]), Path.of(args[2]));
+        } else {
+            toCsv(Path.of(args[1]), Path.of(args[2]));
+        }
+    }
+
+    // The binary fields of a record, or null if the record has to be stored as a raw line
+    private static Encoded encode(PersonRecord record, DateTimeFormatter formatter) {
+        if (record.fieldCount() < 6 || record.fieldCount() > 7 || !fitsIndex(record.getPersonID())) return null;
+        try {
+            Encoded encoded = new Encoded();
+            encoded.id = record.getPersonID().getBytes(StandardCharsets.ISO_8859_1);
+            encoded.birthday = (int) LocalDate.parse(record.getBirthday(), formatter).toEpochDay();
+
+            String demerits = record.getDemerits();
+            String[] entries = demerits.isEmpty() ? new String[0] : demerits.split(";", -1);
+            encoded.demeritDays = new int[entries.length];
+            encoded.demeritPoints = new byte[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                String[] pair = entries[i].split(":", -1);
+                if (pair.length != 2) return null;
+                int points = Integer.parseInt(pair[1]);
+                if (points < Byte.MIN_VALUE || points > Byte.MAX_VALUE) return null;
+                encoded.demeritDays[i] = (int) LocalDate.parse(pair[0], formatter).toEpochDay();
+                encoded.demeritPoints[i] = (byte) points;
+            }
+
+            // only keep the binary form if it turns back into exactly the same line
+            String decoded = toLine(record.getPersonID(), record.getFirstName(), record.getLastName(), record.getAddress(),
+                    encoded.birthday, record.isSuspended(), record.fieldCount() > 6, encoded.demeritDays, encoded.demeritPoints, formatter);
+            return decoded.equals(record.getLine()) ? encoded : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static PersonRecord readRecord(DataInputStream in, DateTimeFormatter formatter) throws IOException {
+        byte kind = in.readByte();
+        if (kind == RAW_LINE) {
+            return PersonRecord.parse(readString(in));
+        }
+        if (kind != PERSON) {
+            throw new IOException("Unknown record kind " + kind);
+        }
+
+        byte[] id = new byte[ID_WIDTH];
+        in.readFully(id);
+        String firstName = readString(in);
+        String lastName = readString(in);
+        String address = readString(in);
+        int birthday = in.readInt();
+        boolean suspended = in.readByte() != 0;
+        boolean hasDemeritColumn = in.readByte() != 0;
+        int demeritCount = in.readInt();
+        int[] days = new int[demeritCount];
+        byte[] points = new byte[demeritCount];
+        for (int i = 0; i < demeritCount; i++) {
+            days[i] = in.readInt();
+            points[i] = in.readByte();
+        }
+        return PersonRecord.parse(toLine(new String(id, StandardCharsets.ISO_8859_1), firstName, lastName, address,
+                birthday, suspended, hasDemeritColumn, days, points, formatter));
+    }
+
+    private static String toLine(String personID, String firstName, String lastName, String address, int birthday,
+                                 boolean suspended, boolean hasDemeritColumn, int[] days, byte[] points, DateTimeFormatter formatter) {
+        StringBuilder line = new StringBuilder(96);
+        line.append(personID).append(',').append(firstName).append(',').append(lastName).append(',')
+                .append(address).append(',').append(LocalDate.ofEpochDay(birthday).format(formatter)).append(',')
+                .append(suspended);
+        if (hasDemeritColumn) {
+            line.append(',');
+            for (int i = 0; i < days.length; i++) {
+                if (i > 0) line.append(';');
+                line.append(LocalDate.ofEpochDay(days[i]).format(formatter)).append(':').append(points[i]);
+            }
+        }
+        return line.toString();
+    }
+
+    private static void readHeader(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a binary registry file");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary registry version " + version);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Negative string length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // IDs go into the fixed width index only if they are exactly 10 single byte characters
+    private static boolean fitsIndex(String personID) {
+        if (personID.length() != ID_WIDTH) return false;
+        for (int i = 0; i < ID_WIDTH; i++) {
+            if (personID.charAt(i) > 0xFF) return false;
+        }
+        return true;
+    }
+
+    private static int compareKey(byte[] entry, byte[] key) {
+        for (int i = 0; i < ID_WIDTH; i++) {
+            int difference = (entry[i] & 0xFF) - (key[i] & 0xFF);
+            if (difference != 0) return difference;
+        }
+        return 0;
+    }
+
+    private static long readLong(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        readFully(channel, buffer, position);
+        return buffer.getLong(0);
+    }
+
+    private static int readInt(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+        readFully(channel, buffer, position);
+        return buffer.getInt(0);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) throw new EOFException();
+        }
+    }
+
+    private static final class Encoded {
+        byte[] id;
+        int birthday;
+        int[] demeritDays;
+        byte[] demeritPoints;
+    }
+
+    private record IndexEntry(String personID, long offset) {
+    }
+
+    // Keeps track of the number of bytes written so record offsets can go into the index
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
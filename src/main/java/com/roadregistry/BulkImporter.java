@@ -0,0 +1,158 @@
+package com.roadregistry;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Imports many people at once from a file in the layout produced by Person.toCSV(). The rows are
+// validated in parallel on a fork-join pool, duplicates are looked up against the registry and
+// within the file itself, the accepted rows are added with one append and the rejected rows are
+// handed to the background error log writer. This replaces calling addPerson() per row, and like
+// addPerson() every accepted row publishes a PERSON_ADDED event.
+public class BulkImporter {
+    // rows validated by one fork-join task before it stops splitting
+    private static final int ROWS_PER_TASK = 4096;
+
+    private final String filePath;
+    private final String errorLogPath;
+    private final ForkJoinPool pool;
+
+    // Outcome of an import
+    public record Report(int rows, int accepted, int rejected, Map<ValidationFailure, Integer> failures, long elapsedNanos) {
+
+        public double rowsPerSecond() {
+            return (elapsedNanos == 0) ? 0 : rows * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows, %d accepted, %d rejected %s in %.1f ms (%.0f rows/s)",
+                    rows, accepted, rejected, failures, elapsedNanos / 1_000_000.0, rowsPerSecond());
+        }
+    }
+
+    public BulkImporter(String filePath) {
+        this(filePath, Person.ERROR_LOG_PATH, ForkJoinPool.commonPool());
+    }
+
+    public BulkImporter(String filePath, String errorLogPath, ForkJoinPool pool) {
+        this.filePath = filePath;
+        this.errorLogPath = errorLogPath;
+        this.pool = pool;
+    }
+
+    // Imports the rows of the given file
+    public Report importFile(Path rowsFile) throws IOException {
+        long start = System.nanoTime();
+        List<String> rows = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(rowsFile)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) rows.add(line);
+            }
+        }
+        return importRows(rows, start);
+    }
+
+    // Imports the given rows, in order
+    public Report importRows(List<String> rows) throws IOException {
+        return importRows(rows, System.nanoTime());
+    }
+
+    private Report importRows(List<String> rows, long start) throws IOException {
+        // field checks do not depend on each other, run them in parallel
+        ValidationFailure[] failures = new ValidationFailure[rows.size()];
+        pool.invoke(new ValidateRows(rows, failures, 0, rows.size()));
+
+        PersonRepository repository = PersonRepository.forFile(filePath);
+        List<PersonRecord> accepted = new ArrayList<>();
+        ErrorLog errorLog = ErrorLog.forFile(errorLogPath);
+        Map<ValidationFailure, Integer> failureCounts = new EnumMap<>(ValidationFailure.class);
+        RegistryEvents events = RegistryEvents.forFile(filePath);
+
+        // duplicate checks and the append have to see the same registry, nobody else may add
+        // people in between. The events are published before the lock is released, so they come
+        // before any later change to the same people
+        StripedLock.Held held = repository.lockAll();
+        try {
+            Set<String> seen = new HashSet<>();
+            for (int i = 0; i < rows.size(); i++) {
+                String row = rows.get(i);
+                ValidationFailure failure = failures[i];
+                if (failure == null && (!seen.add(row) || repository.contains(row))) {
+                    failure = ValidationFailure.DUPLICATE_RECORD;
+                }
+
+                if (failure == null) {
+                    accepted.add(PersonRecord.parse(row));
+                } else {
+                    failureCounts.merge(failure, 1, Integer::sum);
+                    RegistryMetrics.validationFailed(failure);
+                    errorLog.log(failure, row);
+                }
+            }
+            repository.appendAll(accepted);
+            for (PersonRecord record : accepted) {
+                events.publish(RegistryEvent.Type.PERSON_ADDED, record.getPersonID(), null, null, record.getLine());
+            }
+        } finally {
+            held.unlock();
+        }
+
+        return new Report(rows.size(), accepted.size(), rows.size() - accepted.size(), failureCounts, System.nanoTime() - start);
+    }
+
+    // Checks a single row, returns the reason it is rejected or null
+    static ValidationFailure validate(String row) {
+        String[] parts = row.split(",", -1);
+        if (parts.length != 6 || !(parts[5].equals("true") || parts[5].equals("false"))) {
+            return ValidationFailure.RECORD_FORMAT;
+        }
+        return PersonValidator.check(parts[0], parts[3], parts[4]);
+    }
+
+    // Validates a range of rows, splitting it in half until it is small enough
+    private static final class ValidateRows extends RecursiveAction {
+        // fork/join tasks are Serializable, these ones are never serialized
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<String> rows;
+        private final ValidationFailure[] failures;
+        private final int from;
+        private final int to;
+
+        ValidateRows(List<String> rows, ValidationFailure[] failures, int from, int to) {
+            this.rows = rows;
+            this.failures = failures;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ROWS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    failures[i] = validate(rows.get(i));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ValidateRows(rows, failures, from, middle), new ValidateRows(rows, failures, middle, to));
+        }
+    }
+
+    // Usage: BulkImporter <rows file> [registry file]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: BulkImporter <rows file> [registry file]");
+            return;
+        }
+        String registry = (args.length == 2) ? args[1] : "persons.txt";
+        System.out.println(new BulkImporter(registry).importFile(Path.of(args[0])));
+        PersonRepository.forFile(registry).compact();
+        ErrorLog.forFile(Person.ERROR_LOG_PATH).flush();
+    }
+}
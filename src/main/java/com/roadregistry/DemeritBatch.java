@@ -0,0 +1,134 @@
+package com.roadregistry;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+// Applies a whole feed of offences to the registry in one go. Each line of the feed has the
+// form "personID,points,dd-MM-yyyy". Offences are grouped per person so the demerit history and
+// the suspension status of every affected person are recalculated once, and the registry file is
+// written a single time at the end instead of once per offence.
+public class DemeritBatch {
+    private final String filePath;
+
+    // Outcome of one line of the feed, status is "Success" or "Failed" like Person.addDemeritPoints
+    public record Result(int lineNumber, String record, String status) {
+    }
+
+    public DemeritBatch(String filePath) {
+        this.filePath = filePath;
+    }
+
+    // Processes the offences stored in the given file
+    public List<Result> process(File offences) throws IOException {
+        try (Reader reader = new FileReader(offences)) {
+            return process(reader);
+        }
+    }
+
+    // Processes the offences read from the given stream, returns one result per non-empty line
+    public List<Result> process(Reader offences) throws IOException {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+        List<Result> results = new ArrayList<>();
+        // valid offences grouped per person, in the order they appear in the feed
+        Map<String, List<Integer>> linesByPerson = new LinkedHashMap<>();
+        Map<String, List<DemeritLedger.Offence>> offencesByPerson = new HashMap<>();
+
+        BufferedReader reader = new BufferedReader(offences);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            results.add(new Result(lineNumber, line, "Failed"));
+            String[] parts = line.split(",", -1);
+            if (parts.length != 3) continue;
+
+            // same checks as Person.addDemeritPoints
+            String personID = parts[0].trim();
+            String dateStr = parts[2].trim();
+            int points;
+            LocalDate offenseDate;
+            try {
+                points = Integer.parseInt(parts[1].trim());
+                if (!PersonValidator.isValidDate(dateStr) || points < 1 || points > 6) continue;
+                offenseDate = LocalDate.parse(dateStr, formatter);
+            } catch (RuntimeException e) {
+                continue;
+            }
+
+            linesByPerson.computeIfAbsent(personID, key -> new ArrayList<>()).add(results.size() - 1);
+            offencesByPerson.computeIfAbsent(personID, key -> new ArrayList<>()).add(new DemeritLedger.Offence(offenseDate, points));
+        }
+
+        PersonRepository repository = PersonRepository.forFile(filePath);
+        DemeritLedger ledger = DemeritLedger.forFile(filePath);
+        RegistryEvents events = RegistryEvents.forFile(filePath);
+        for (Map.Entry<String, List<Integer>> person : linesByPerson.entrySet()) {
+            String personID = person.getKey();
+            if (applyOffences(repository, ledger, events, personID, offencesByPerson.get(personID))) {
+                for (int index : person.getValue()) {
+                    Result failed = results.get(index);
+                    results.set(index, new Result(failed.lineNumber(), failed.record(), "Success"));
+                }
+            }
+        }
+
+        // write the registry file once for the whole batch
+        repository.compact();
+        return results;
+    }
+
+    // Adds all offences of one person, returns false if the person is unknown or the record is unreadable
+    private boolean applyOffences(PersonRepository repository, DemeritLedger ledger, RegistryEvents events, String personID,
+                                  List<DemeritLedger.Offence> offences) throws IOException {
+        // like Person.addDemeritPoints, a row only keeps the offences inside the two year window
+        int lastExpiredDay = DemeritLedger.lastExpiredDay(LocalDate.now());
+        DemeritHistory byDate = new DemeritHistory();
+        DemeritHistory recent = new DemeritHistory();
+        for (DemeritLedger.Offence offence : offences) {
+            byDate.add(offence.date(), offence.points());
+            if (offence.date().toEpochDay() > lastExpiredDay) recent.add(offence.date(), offence.points());
+        }
+
+        StripedLock.Held held = repository.lockFor(personID);
+        try {
+            int[] rows = repository.rowsOf(personID);
+            // the rows hand their expired offences to the ledger before the batch is recorded
+            PersonRecord[] previous = new PersonRecord[rows.length];
+            PersonRecord[] changed = new PersonRecord[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                previous[i] = repository.get(rows[i]);
+                try {
+                    DemeritHistory allDemerits = ledger.takeExpired(personID, Person.parseDemerits(previous[i].getDemerits()), lastExpiredDay);
+                    allDemerits.addAll(recent);
+                    changed[i] = Person.withDemerits(previous[i], allDemerits, Person.recentPoints(allDemerits));
+                } catch (RuntimeException e) {
+                    // leave a record that cannot be read unchanged, like Person.addDemeritPoints does
+                }
+            }
+
+            // like Person.addDemeritPoints, the rows are stored first and the offences go to the
+            // ledger only if a row took them, so the ledger agrees with the report
+            boolean updated = false;
+            try {
+                for (int i = 0; i < rows.length; i++) {
+                    if (changed[i] == null) continue;
+                    repository.set(rows[i], changed[i]);
+                    Person.publishDemerits(events, previous[i], changed[i], byDate.format());
+                    updated = true;
+                }
+            } catch (IOException e) {
+                // a row that is already stored keeps the offences, so the lines succeeded
+                if (!updated) throw e;
+            }
+            if (updated) ledger.recordStored(personID, offences);
+            return updated;
+        } finally {
+            held.unlock();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.roadregistry;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+// The demerit points of one person, one entry per offence date. Entries are kept sorted by date in
+// two parallel primitive arrays (epoch day and points) instead of a HashMap<LocalDate, Integer>, so
+// nothing is boxed, the points of the last two years are found with a binary search and the
+// history is always written back in date order.
+public class DemeritHistory {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    private int[] days;
+    private short[] points;
+    private int size;
+
+    public DemeritHistory() {
+        this(4);
+    }
+
+    private DemeritHistory(int capacity) {
+        days = new int[capacity];
+        points = new short[capacity];
+    }
+
+    // Reads a history in the "dd-MM-yyyy:points;..." format of column 7 of the registry file.
+    // Entries that are not a date:points pair are skipped, a later entry for the same date wins.
+    public static DemeritHistory parse(String demerits) {
+        String existingDemerits = demerits.trim();
+        DemeritHistory history = new DemeritHistory();
+        if (existingDemerits.isEmpty()) return history;
+
+        for (String entry : existingDemerits.split(";")) {
+            String[] pair = entry.split(":");
+            if (pair.length == 2) {
+                history.put(parseDate(pair[0].trim()), Integer.parseInt(pair[1].trim()));
+            }
+        }
+        return history;
+    }
+
+    // Adds the points for an offence date, replacing the points already stored for that date
+    public void put(LocalDate date, int points) {
+        put((int) date.toEpochDay(), points);
+    }
+
+    // Adds the points for an offence date given as an epoch day
+    public void put(int epochDay, int points) {
+        if (points < Short.MIN_VALUE || points > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Demerit points out of range: " + points);
+        }
+        int position = Arrays.binarySearch(days, 0, size, epochDay);
+        if (position >= 0) {
+            this.points[position] = (short) points;
+            return;
+        }
+
+        int insertAt = -position - 1;
+        if (size == days.length) {
+            days = Arrays.copyOf(days, size * 2);
+            this.points = Arrays.copyOf(this.points, size * 2);
+        }
+        System.arraycopy(days, insertAt, days, insertAt + 1, size - insertAt);
+        System.arraycopy(this.points, insertAt, this.points, insertAt + 1, size - insertAt);
+        days[insertAt] = epochDay;
+        this.points[insertAt] = (short) points;
+        size++;
+    }
+
+    // Adds all entries of the other history, its points win for dates present in both
+    public void putAll(DemeritHistory other) {
+        for (int i = 0; i < other.size; i++) {
+            put(other.days[i], other.points[i]);
+        }
+    }
+
+    // History with a single offence
+    public static DemeritHistory single(LocalDate date, int points) {
+        DemeritHistory history = new DemeritHistory(1);
+        history.put(date, points);
+        return history;
+    }
+
+    // Adds the points of another offence on the given date to the points already stored for it, so
+    // several offences on one day count with their total
+    public void add(LocalDate date, int points) {
+        int epochDay = (int) date.toEpochDay();
+        int position = Arrays.binarySearch(days, 0, size, epochDay);
+        put(epochDay, (position >= 0) ? this.points[position] + points : points);
+    }
+
+    // Adds the points of all entries of the other history, dates present in both add up
+    public void addAll(DemeritHistory other) {
+        for (int i = 0; i < other.size; i++) {
+            add(LocalDate.ofEpochDay(other.days[i]), other.points[i]);
+        }
+    }
+
+    // Sum of the points of all offences strictly after the given epoch day
+    public int sumAfter(int epochDay) {
+        int position = Arrays.binarySearch(days, 0, size, epochDay);
+        int from = (position >= 0) ? position + 1 : -position - 1;
+        int total = 0;
+        for (int i = from; i < size; i++) {
+            total += points[i];
+        }
+        return total;
+    }
+
+    // Points of the offences in the two years before the given day, the total that decides suspension
+    public int recentPoints(LocalDate today) {
+        return sumAfter((int) today.minusYears(2).toEpochDay());
+    }
+
+    // Number of offence dates in the history
+    public int size() {
+        return size;
+    }
+
+    // Epoch day of the i-th offence, in date order
+    public int dayAt(int i) {
+        return days[i];
+    }
+
+    // Points of the i-th offence, in date order
+    public int pointsAt(int i) {
+        return points[i];
+    }
+
+    // Writes the history in the "dd-MM-yyyy:points;..." format, oldest offence first
+    public String format() {
+        StringBuilder result = new StringBuilder(size * 13);
+        for (int i = 0; i < size; i++) {
+            if (i > 0) result.append(';');
+            LocalDate date = LocalDate.ofEpochDay(days[i]);
+            appendTwoDigits(result, date.getDayOfMonth());
+            result.append('-');
+            appendTwoDigits(result, date.getMonthValue());
+            result.append('-');
+            int year = date.getYear();
+            if (year >= 0 && year < 1000) {
+                result.append(year < 10 ? "000" : year < 100 ? "00" : "0");
+            }
+            result.append(year).append(':').append(points[i]);
+        }
+        return result.toString();
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+
+    // Parses a dd-MM-yyyy date without going through the formatter for the common case. Anything
+    // unusual is left to the formatter so the accepted dates stay the same as before.
+    private static int parseDate(String text) {
+        if (text.length() == 10 && text.charAt(2) == '-' && text.charAt(5) == '-') {
+            int day = digits(text, 0, 2);
+            int month = digits(text, 3, 5);
+            int year = digits(text, 6, 10);
+            if (day >= 0 && month >= 0 && year > 0) {
+                try {
+                    return (int) LocalDate.of(year, month, day).toEpochDay();
+                } catch (DateTimeException e) {
+                    // fall through to the formatter
+                }
+            }
+        }
+        return (int) LocalDate.parse(text, FORMATTER).toEpochDay();
+    }
+
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void appendTwoDigits(StringBuilder result, int value) {
+        if (value < 10) result.append('0');
+        result.append(value);
+    }
+}
@@ -0,0 +1,609 @@
+package com.roadregistry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// Every offence ever added to a registry, one entry per offence, kept apart from the person rows.
+// Column 7 of a row holds the points per date and only has to cover the two year window that
+// decides suspension; the ledger keeps the full history, so two offences on the same day stay two
+// entries and old offences can still be looked up.
+//
+// New offences are appended to a hot file next to the registry ("persons.txt.ledger") and are
+// also held in memory, sorted by date per person. archive() moves the offences that left the two
+// year window into cold segments, one per offence year ("persons.txt.ledger-2023"). Rows let go of
+// their expired offences each time an offence is added to them, and archive() trims the rest. A
+// segment is sorted by person and date and ends with an index of its people, so a query reads
+// only the entries of one person in the years it asks for.
+//
+// The offences of a change are recorded after the row is stored, through recordStored(), which
+// does not fail: an offence that cannot be written is kept in memory and the hot file is written
+// again from memory before the next offence.
+//
+// Hot layout, one line per offence:  "O,checksum,sequence,dd-MM-yyyy,points,personID"
+// Segment layout:
+//   header   "RRL1", int version, int year, int entry count
+//   entries  (int epoch day, byte points) grouped by person, in date order per person
+//   index    int person count, then (personID writeUTF, int first entry, int entry count) by ID
+//   trailer  long index offset
+//
+// An archive writes the segments first, then records in "persons.txt.ledger-archived" which hot
+// entries they took, then rewrites the hot file. A crash in between leaves entries in the hot file
+// that are already archived; they are recognised by that record and skipped when it is read.
+public class DemeritLedger {
+    private static final Map<String, DemeritLedger> OPEN = new HashMap<>();
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+    private static final byte[] MAGIC = {'R', 'R', 'L', '1'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 3 * Integer.BYTES;
+    private static final int ENTRY_SIZE = Integer.BYTES + 1;
+    // the most points a single offence can carry
+    private static final int MAX_OFFENCE_POINTS = 6;
+
+    private final File hotFile;
+    private final File archivedFile;
+    private final File directory;
+    private final String segmentPrefix;
+
+    // the fields below are guarded by this
+    private boolean loaded = false;
+    private final Map<String, Entries> hot = new HashMap<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private BufferedWriter writer;
+    private long nextSequence = 1;
+    // hot entries up to this sequence and day were moved to a segment by the last archive
+    private long archivedSequence = 0;
+    private int archivedDay = Integer.MIN_VALUE;
+    // true if the hot file may be missing entries held in memory or end in a torn line
+    private boolean unwritten = false;
+    // offences of stored changes that came while the ledger could not be read, added once it is
+    private final List<Waiting> waiting = new ArrayList<>();
+
+    private record Waiting(String personID, Offence offence) {
+    }
+
+    // One offence
+    public record Offence(LocalDate date, int points) {
+    }
+
+    private DemeritLedger(File base) {
+        this.hotFile = new File(base.getPath() + ".ledger");
+        this.archivedFile = new File(base.getPath() + ".ledger-archived");
+        this.directory = base.getParentFile();
+        this.segmentPrefix = base.getName() + ".ledger-";
+    }
+
+    // Returns the shared ledger of the given registry file
+    public static DemeritLedger forFile(String path) {
+        File base = new File(path).getAbsoluteFile();
+        synchronized (OPEN) {
+            return OPEN.computeIfAbsent(base.getPath(), key -> new DemeritLedger(base));
+        }
+    }
+
+    // Drops the shared ledger for the path, as if the program had stopped. Only used by tests to
+    // check what is recovered from the files on disk.
+    static void evict(String path) throws IOException {
+        DemeritLedger ledger;
+        synchronized (OPEN) {
+            ledger = OPEN.remove(new File(path).getAbsoluteFile().getPath());
+        }
+        if (ledger != null) {
+            synchronized (ledger) {
+                ledger.closeWriter();
+            }
+        }
+    }
+
+    // Adds an offence of the given person, the cost does not depend on their history
+    public synchronized void record(String personID, LocalDate date, int points) throws IOException {
+        recordAll(personID, List.of(new Offence(date, points)));
+    }
+
+    // Adds several offences of the given person with a single write. Offences that were added in
+    // memory stay there if the write fails, and are written with the next one.
+    public synchronized void recordAll(String personID, List<Offence> offences) throws IOException {
+        load();
+        try {
+            for (Offence offence : offences) {
+                append(personID, (int) offence.date().toEpochDay(), offence.points());
+            }
+            if (writer != null) writer.flush();
+        } catch (IOException e) {
+            unwritten = true;
+            closeWriterQuietly();
+            throw e;
+        }
+    }
+
+    // Adds the offences of a change that is already stored in the rows. It never fails the change:
+    // offences that cannot be written yet are kept and written later, and the failure is counted
+    // in RegistryMetrics.
+    public synchronized void recordStored(String personID, List<Offence> offences) {
+        try {
+            recordAll(personID, offences);
+        } catch (IOException e) {
+            RegistryMetrics.ledgerWriteFailed();
+            if (!loaded) {
+                for (Offence offence : offences) {
+                    waiting.add(new Waiting(personID, offence));
+                }
+            }
+        }
+    }
+
+    // Offences of the person between the two dates, both included, oldest first
+    public synchronized List<Offence> offences(String personID, LocalDate from, LocalDate to) throws IOException {
+        load();
+        int fromDay = dayOf(from);
+        int toDay = dayOf(to);
+        List<Offence> result = new ArrayList<>();
+        if (fromDay > toDay) return result;
+
+        for (Segment segment : segments.subMap(from.getYear(), true, to.getYear(), true).values()) {
+            segment.collect(personID, fromDay, toDay, result);
+        }
+        Entries entries = hot.get(personID);
+        if (entries != null) {
+            for (int i = entries.indexOf(fromDay); i < entries.size && entries.days[i] <= toDay; i++) {
+                result.add(new Offence(LocalDate.ofEpochDay(entries.days[i]), entries.points[i]));
+            }
+        }
+        // an old offence recorded after its year was archived is still in the hot file
+        result.sort(Comparator.comparing(Offence::date));
+        return result;
+    }
+
+    // Points of the person between the two dates, both included
+    public int points(String personID, LocalDate from, LocalDate to) throws IOException {
+        int total = 0;
+        for (Offence offence : offences(personID, from, to)) {
+            total += offence.points();
+        }
+        return total;
+    }
+
+    // Number of offences in the hot file, the ones that have not been archived
+    public synchronized int hotSize() throws IOException {
+        load();
+        int size = 0;
+        for (Entries entries : hot.values()) {
+            size += entries.size;
+        }
+        return size;
+    }
+
+    // Moves the offences that are no longer inside the two year window on the given day out of the
+    // rows of the given registries and out of the hot file into the cold segments. Offences a row
+    // has from before the ledger existed are added to the ledger on the way. Returns the number of
+    // offences moved to the segments.
+    public int archive(LocalDate today, PersonRepository... registries) throws IOException {
+        int lastExpiredDay = lastExpiredDay(today);
+        for (PersonRepository registry : registries) {
+            trimRows(registry, lastExpiredDay);
+        }
+        return archiveEntries(lastExpiredDay);
+    }
+
+    // Takes the expired offences out of column 7 of every row that has some
+    private void trimRows(PersonRepository registry, int lastExpiredDay) throws IOException {
+        Set<String> expiredIDs = new LinkedHashSet<>();
+        synchronized (registry) {
+            int size = registry.size();
+            for (int row = 0; row < size; row++) {
+                PersonRecord record = registry.get(row);
+                if (record != null && firstDay(record) <= lastExpiredDay) expiredIDs.add(record.getPersonID());
+            }
+        }
+
+        for (String personID : expiredIDs) {
+            StripedLock.Held held = registry.lockFor(personID);
+            try {
+                for (int row : registry.rowsOf(personID)) {
+                    PersonRecord record = registry.get(row);
+                    DemeritHistory history;
+                    try {
+                        history = DemeritHistory.parse(record.getDemerits());
+                    } catch (RuntimeException e) {
+                        // a history that cannot be read is left as it is
+                        continue;
+                    }
+                    DemeritHistory kept = takeExpired(personID, history, lastExpiredDay);
+                    if (kept == history) continue;
+
+                    String[] fields = new String[Math.max(record.fieldCount(), 7)];
+                    for (int i = 0; i < fields.length; i++) {
+                        fields[i] = (i < record.fieldCount()) ? record.field(i) : "";
+                    }
+                    fields[6] = kept.format();
+                    registry.set(row, PersonRecord.of(fields));
+                }
+            } finally {
+                held.unlock();
+            }
+        }
+    }
+
+    // Epoch day of the oldest offence on the row, MAX_VALUE if it has none or cannot be read
+    private static int firstDay(PersonRecord record) {
+        String demerits = record.getDemerits();
+        if (demerits.isBlank()) return Integer.MAX_VALUE;
+        try {
+            DemeritHistory history = DemeritHistory.parse(demerits);
+            return (history.size() == 0) ? Integer.MAX_VALUE : history.dayAt(0);
+        } catch (RuntimeException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    // Last day that is no longer inside the two year window on the given day, the same window as
+    // DemeritHistory.recentPoints
+    static int lastExpiredDay(LocalDate today) {
+        return (int) today.minusYears(2).toEpochDay();
+    }
+
+    // Takes the offences on or before the last expired day out of a row's history and returns what
+    // is left, or the same history if nothing expired. Points the ledger does not have yet for an
+    // expired day, from before the ledger existed or part of a larger same-day total, are recorded
+    // first, as offences of at most 6 points, so nothing is lost when the row lets go of them.
+    synchronized DemeritHistory takeExpired(String personID, DemeritHistory history, int lastExpiredDay) throws IOException {
+        if (history.size() == 0 || history.dayAt(0) > lastExpiredDay) return history;
+
+        DemeritHistory kept = new DemeritHistory();
+        List<Offence> missing = new ArrayList<>();
+        for (int i = 0; i < history.size(); i++) {
+            int day = history.dayAt(i);
+            if (day > lastExpiredDay) {
+                kept.put(day, history.pointsAt(i));
+                continue;
+            }
+            LocalDate date = LocalDate.ofEpochDay(day);
+            for (int left = history.pointsAt(i) - points(personID, date, date); left > 0; left -= MAX_OFFENCE_POINTS) {
+                missing.add(new Offence(date, Math.min(left, MAX_OFFENCE_POINTS)));
+            }
+        }
+        recordAll(personID, missing);
+        return kept;
+    }
+
+    private synchronized int archiveEntries(int lastExpiredDay) throws IOException {
+        load();
+        // expired hot entries grouped by year, then by person
+        TreeMap<Integer, TreeMap<String, Entries>> expired = new TreeMap<>();
+        int moved = 0;
+        for (Map.Entry<String, Entries> person : hot.entrySet()) {
+            Entries entries = person.getValue();
+            for (int i = 0; i < entries.size && entries.days[i] <= lastExpiredDay; i++) {
+                int year = LocalDate.ofEpochDay(entries.days[i]).getYear();
+                expired.computeIfAbsent(year, key -> new TreeMap<>())
+                        .computeIfAbsent(person.getKey(), key -> new Entries())
+                        .add(entries.days[i], entries.points[i], 0);
+                moved++;
+            }
+        }
+        if (moved == 0) return 0;
+
+        for (Map.Entry<Integer, TreeMap<String, Entries>> year : expired.entrySet()) {
+            Segment existing = segments.get(year.getKey());
+            if (existing != null) existing.readAllInto(year.getValue());
+            segments.put(year.getKey(), Segment.write(segmentPath(year.getKey()), year.getKey(), year.getValue()));
+        }
+
+        archivedSequence = nextSequence - 1;
+        archivedDay = lastExpiredDay;
+        File tempMarker = new File(archivedFile.getPath() + ".tmp");
+        Files.writeString(tempMarker.toPath(), archivedSequence + "," + archivedDay);
+        PersonRepository.moveIntoPlace(tempMarker.toPath(), archivedFile.toPath());
+
+        for (Iterator<Entries> it = hot.values().iterator(); it.hasNext(); ) {
+            Entries entries = it.next();
+            entries.removeUpTo(lastExpiredDay);
+            if (entries.size == 0) it.remove();
+        }
+        rewriteHot();
+        return moved;
+    }
+
+    private Path segmentPath(int year) {
+        return new File(directory, segmentPrefix + year).toPath();
+    }
+
+    // Reads the archive record, the hot file and the list of segments on first use
+    private void load() throws IOException {
+        if (loaded) return;
+        // start over if an earlier load failed half way
+        hot.clear();
+        segments.clear();
+        nextSequence = 1;
+        archivedSequence = 0;
+        archivedDay = Integer.MIN_VALUE;
+
+        if (archivedFile.exists()) {
+            String[] parts = Files.readString(archivedFile.toPath()).trim().split(",");
+            archivedSequence = Long.parseLong(parts[0]);
+            archivedDay = Integer.parseInt(parts[1]);
+            nextSequence = archivedSequence + 1;
+        }
+
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (!name.startsWith(segmentPrefix)) continue;
+                String year = name.substring(segmentPrefix.length());
+                if (!year.isEmpty() && year.chars().allMatch(Character::isDigit)) {
+                    segments.put(Integer.parseInt(year), new Segment(new File(directory, name).toPath()));
+                }
+            }
+        }
+
+        if (hotFile.exists()) readHot();
+        loaded = true;
+        if (!waiting.isEmpty()) {
+            for (Waiting offence : waiting) {
+                addInMemory(offence.personID(), (int) offence.offence().date().toEpochDay(), offence.offence().points());
+            }
+            waiting.clear();
+            unwritten = true;
+        }
+    }
+
+    private void readHot() throws IOException {
+        boolean intact = true;
+        boolean stale = false;
+        try (BufferedReader reader = new BufferedReader(new FileReader(hotFile, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",", 3);
+                if (parts.length < 3 || !parts[0].equals("O") || !checksum(parts[2]).equals(parts[1])) {
+                    // a torn record at the end of the file, everything before it is kept
+                    intact = false;
+                    break;
+                }
+                String[] fields = parts[2].split(",", 4);
+                long sequence = Long.parseLong(fields[0]);
+                int day = (int) LocalDate.parse(fields[1], FORMATTER).toEpochDay();
+                nextSequence = Math.max(nextSequence, sequence + 1);
+                if (sequence <= archivedSequence && day <= archivedDay) {
+                    stale = true;
+                    continue;
+                }
+                hot.computeIfAbsent(fields[3], key -> new Entries()).add(day, Integer.parseInt(fields[2]), sequence);
+            }
+        }
+        // the hot file is written again from memory before the next entry
+        if (!intact || stale) unwritten = true;
+    }
+
+    private void append(String personID, int day, int points) throws IOException {
+        long sequence = addInMemory(personID, day, points);
+        if (unwritten) {
+            // the new entry is written with the ones the hot file may be missing
+            rewriteHot();
+            return;
+        }
+        if (writer == null) {
+            writer = new BufferedWriter(new FileWriter(hotFile, StandardCharsets.UTF_8, true));
+        }
+        writer.write(line(sequence, day, points, personID));
+        writer.newLine();
+    }
+
+    private long addInMemory(String personID, int day, int points) {
+        long sequence = nextSequence++;
+        hot.computeIfAbsent(personID, key -> new Entries()).add(day, points, sequence);
+        return sequence;
+    }
+
+    // Writes the hot entries held in memory to a new hot file
+    private void rewriteHot() throws IOException {
+        closeWriter();
+        File tempFile = new File(hotFile.getPath() + ".tmp");
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(tempFile, StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Entries> person : hot.entrySet()) {
+                Entries entries = person.getValue();
+                for (int i = 0; i < entries.size; i++) {
+                    out.write(line(entries.sequences[i], entries.days[i], entries.points[i], person.getKey()));
+                    out.newLine();
+                }
+            }
+        }
+        PersonRepository.moveIntoPlace(tempFile.toPath(), hotFile.toPath());
+        unwritten = false;
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void closeWriterQuietly() {
+        try {
+            closeWriter();
+        } catch (IOException e) {
+            // the hot file is written again from memory
+            writer = null;
+        }
+    }
+
+    // Epoch day of the date, dates beyond the int range are clamped so open ranges still work
+    private static int dayOf(LocalDate date) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, date.toEpochDay()));
+    }
+
+    private static String line(long sequence, int day, int points, String personID) {
+        String payload = sequence + "," + LocalDate.ofEpochDay(day).format(FORMATTER) + "," + points + "," + personID;
+        return "O," + checksum(payload) + "," + payload;
+    }
+
+    private static String checksum(String payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    // Offences of one person sorted by day, offences of the same day in the order they came in
+    private static final class Entries {
+        int[] days = new int[2];
+        byte[] points = new byte[2];
+        long[] sequences = new long[2];
+        int size;
+
+        void add(int day, int offencePoints, long sequence) {
+            int at = indexOf(day + 1);
+            if (size == days.length) {
+                days = Arrays.copyOf(days, size * 2);
+                points = Arrays.copyOf(points, size * 2);
+                sequences = Arrays.copyOf(sequences, size * 2);
+            }
+            System.arraycopy(days, at, days, at + 1, size - at);
+            System.arraycopy(points, at, points, at + 1, size - at);
+            System.arraycopy(sequences, at, sequences, at + 1, size - at);
+            days[at] = day;
+            points[at] = (byte) offencePoints;
+            sequences[at] = sequence;
+            size++;
+        }
+
+        // Position of the first entry on or after the given day
+        int indexOf(int day) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (days[middle] < day) low = middle + 1; else high = middle;
+            }
+            return low;
+        }
+
+        void removeUpTo(int lastDay) {
+            int from = indexOf(lastDay + 1);
+            System.arraycopy(days, from, days, 0, size - from);
+            System.arraycopy(points, from, points, 0, size - from);
+            System.arraycopy(sequences, from, sequences, 0, size - from);
+            size -= from;
+        }
+    }
+
+    // A cold segment file. Its index of people is read on first use, the entries of a person are
+    // read from the file when they are asked for.
+    private static final class Segment {
+        private final Path path;
+        private String[] ids;
+        private int[] firsts;
+        private int[] counts;
+
+        Segment(Path path) {
+            this.path = path;
+        }
+
+        // Adds the offences of the person between the two days to the list
+        void collect(String personID, int fromDay, int toDay, List<Offence> result) throws IOException {
+            readIndex();
+            int person = Arrays.binarySearch(ids, personID);
+            if (person < 0) return;
+            ByteBuffer entries = readEntries(firsts[person], counts[person]);
+            for (int i = 0; i < counts[person]; i++) {
+                int day = entries.getInt(i * ENTRY_SIZE);
+                if (day >= fromDay && day <= toDay) {
+                    result.add(new Offence(LocalDate.ofEpochDay(day), entries.get(i * ENTRY_SIZE + Integer.BYTES)));
+                }
+            }
+        }
+
+        // Adds every entry of the segment to the given entries per person
+        void readAllInto(Map<String, Entries> byPerson) throws IOException {
+            readIndex();
+            for (int person = 0; person < ids.length; person++) {
+                ByteBuffer entries = readEntries(firsts[person], counts[person]);
+                Entries target = byPerson.computeIfAbsent(ids[person], key -> new Entries());
+                for (int i = 0; i < counts[person]; i++) {
+                    target.add(entries.getInt(i * ENTRY_SIZE), entries.get(i * ENTRY_SIZE + Integer.BYTES), 0);
+                }
+            }
+        }
+
+        private ByteBuffer readEntries(int first, int count) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(count * ENTRY_SIZE);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long position = HEADER_SIZE + (long) first * ENTRY_SIZE;
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new EOFException("Ledger segment ends early: " + path);
+                    }
+                }
+            }
+            return buffer.flip();
+        }
+
+        private void readIndex() throws IOException {
+            if (ids != null) return;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                channel.read(header, 0);
+                header.flip();
+                byte[] magic = new byte[MAGIC.length];
+                header.get(magic);
+                if (!Arrays.equals(magic, MAGIC) || header.getInt() != VERSION) {
+                    throw new IOException("Not a ledger segment: " + path);
+                }
+                ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES);
+                channel.read(trailer, channel.size() - Long.BYTES);
+                long indexOffset = trailer.flip().getLong();
+
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(indexOffset))));
+                int people = in.readInt();
+                String[] readIDs = new String[people];
+                firsts = new int[people];
+                counts = new int[people];
+                for (int i = 0; i < people; i++) {
+                    readIDs[i] = in.readUTF();
+                    firsts[i] = in.readInt();
+                    counts[i] = in.readInt();
+                }
+                ids = readIDs;
+            }
+        }
+
+        // Writes the entries of one year as a new segment and returns it
+        static Segment write(Path path, int year, SortedMap<String, Entries> byPerson) throws IOException {
+            Path tempFile = Path.of(path + ".tmp");
+            int total = 0;
+            for (Entries entries : byPerson.values()) {
+                total += entries.size;
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(year);
+                out.writeInt(total);
+                for (Entries entries : byPerson.values()) {
+                    for (int i = 0; i < entries.size; i++) {
+                        out.writeInt(entries.days[i]);
+                        out.writeByte(entries.points[i]);
+                    }
+                }
+                long indexOffset = HEADER_SIZE + (long) total * ENTRY_SIZE;
+                out.writeInt(byPerson.size());
+                int first = 0;
+                for (Map.Entry<String, Entries> person : byPerson.entrySet()) {
+                    out.writeUTF(person.getKey());
+                    out.writeInt(first);
+                    out.writeInt(person.getValue().size);
+                    first += person.getValue().size;
+                }
+                out.writeLong(indexOffset);
+            }
+            PersonRepository.moveIntoPlace(tempFile, path);
+            return new Segment(path);
+        }
+    }
+}
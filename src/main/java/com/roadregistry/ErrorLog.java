@@ -0,0 +1,165 @@
+package com.roadregistry;
+
+import java.io.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Error log for rejected records. Callers only put an entry on a bounded queue; a single background
+// thread per log file takes entries off the queue in batches and appends them, flushing the file
+// once a batch is full or a short time has passed. Rejecting a record therefore no longer opens,
+// writes and closes error_log.txt on the caller's thread.
+//
+// Each line has the form "timestamp,REASON,record". Optionally, an entry identical to one written
+// within the last deduplication window is dropped, so repeated attempts do not fill the log with
+// the same line.
+public class ErrorLog {
+    private static final Map<String, ErrorLog> OPEN = new HashMap<>();
+
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final int MAX_BATCH = 1_000;
+    private static final long FLUSH_INTERVAL_MILLIS = 200;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(ErrorLog::flushOpen, "error-log-shutdown"));
+    }
+
+    private final File file;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private volatile long deduplicationWindowMillis = 0;
+
+    // the fields below are only used by the writer thread
+    private BufferedWriter writer;
+    private long lastFlush = System.currentTimeMillis();
+    private final LinkedHashMap<String, Long> recentlyWritten = new LinkedHashMap<>();
+
+    // One queued line, or a flush request when done is set
+    private record Entry(long timestamp, ValidationFailure reason, String record, CountDownLatch done) {
+    }
+
+    private ErrorLog(File file) {
+        this.file = file;
+        Thread thread = new Thread(this::run, "error-log-writer-" + file.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Returns the shared error log for the given file path
+    public static ErrorLog forFile(String path) {
+        File file = new File(path).getAbsoluteFile();
+        synchronized (OPEN) {
+            return OPEN.computeIfAbsent(file.getPath(), key -> new ErrorLog(file));
+        }
+    }
+
+    // Drops entries that repeat one written less than the given number of milliseconds ago,
+    // 0 turns deduplication off
+    public void setDeduplicationWindow(long millis) {
+        this.deduplicationWindowMillis = millis;
+    }
+
+    // Queues a rejected record. Only waits if the writer has fallen a full queue behind.
+    public void log(ValidationFailure reason, String record) {
+        enqueue(new Entry(System.currentTimeMillis(), reason, record, null));
+    }
+
+    // Waits until everything logged so far is written to the file
+    public void flush() {
+        CountDownLatch done = new CountDownLatch(1);
+        enqueue(new Entry(0, null, null, done));
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void flushOpen() {
+        List<ErrorLog> logs;
+        synchronized (OPEN) {
+            logs = new ArrayList<>(OPEN.values());
+        }
+        logs.forEach(ErrorLog::flush);
+    }
+
+    private void enqueue(Entry entry) {
+        try {
+            queue.put(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Writer thread: takes batches off the queue and writes them out
+    private void run() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                Entry first = queue.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                // the file could not be written, drop the batch and try again with the next one
+                closeWriter();
+            }
+            // let callers waiting in flush() continue, also when the write failed
+            for (Entry entry : batch) {
+                if (entry.done() != null) entry.done().countDown();
+            }
+            batch.clear();
+        }
+    }
+
+    private void write(List<Entry> batch) throws IOException {
+        boolean flushRequested = false;
+        for (Entry entry : batch) {
+            if (entry.done() != null) {
+                flushRequested = true;
+                continue;
+            }
+            if (isRepeat(entry)) continue;
+
+            if (writer == null) {
+                writer = new BufferedWriter(new FileWriter(file, true));
+            }
+            writer.write(Instant.ofEpochMilli(entry.timestamp()) + "," + entry.reason() + "," + entry.record());
+            writer.newLine();
+        }
+
+        long now = System.currentTimeMillis();
+        if (writer != null && (flushRequested || batch.size() >= MAX_BATCH || now - lastFlush >= FLUSH_INTERVAL_MILLIS)) {
+            writer.flush();
+            lastFlush = now;
+        }
+    }
+
+    // True if the same entry was written within the deduplication window
+    private boolean isRepeat(Entry entry) {
+        long window = deduplicationWindowMillis;
+        if (window <= 0) return false;
+
+        // forget entries that have left the window, the map is in the order they were written
+        Iterator<Long> oldest = recentlyWritten.values().iterator();
+        while (oldest.hasNext() && entry.timestamp() - oldest.next() >= window) {
+            oldest.remove();
+        }
+        String key = entry.reason() + "," + entry.record();
+        if (recentlyWritten.containsKey(key)) return true;
+        recentlyWritten.put(key, entry.timestamp());
+        return false;
+    }
+
+    private void closeWriter() {
+        try {
+            if (writer != null) writer.close();
+        } catch (IOException e) {
+            // nothing more to do with a broken writer
+        }
+        writer = null;
+    }
+}
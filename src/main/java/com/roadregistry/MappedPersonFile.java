@@ -0,0 +1,112 @@
+package com.roadregistry;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.function.Consumer;
+
+// Reads a registry file in the CSV layout through a memory mapping instead of a BufferedReader.
+// Record boundaries and IDs are found by looking at the mapped bytes directly, so rows that are
+// not needed are skipped without creating a String for them. Large files are mapped in windows
+// because a single mapping is limited to 2 GB.
+public class MappedPersonFile {
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private MappedPersonFile() {
+    }
+
+    // Returns the first row with the given personID, or null if the file has none. Only the
+    // matching row is turned into a PersonRecord.
+    public static PersonRecord find(Path file, String personID) throws IOException {
+        byte[] key = personID.getBytes(StandardCharsets.UTF_8);
+        PersonRecord[] found = new PersonRecord[1];
+        scan(file, key, record -> found[0] = record, true, WINDOW_SIZE);
+        return found[0];
+    }
+
+    // Passes every row with the given personID to the consumer, in file order. Only those rows
+    // are decoded.
+    public static void forEachWithID(Path file, String personID, Consumer<PersonRecord> consumer) throws IOException {
+        scan(file, personID.getBytes(StandardCharsets.UTF_8), consumer, false, WINDOW_SIZE);
+    }
+
+    // Passes every non-blank row of the file to the consumer, in file order
+    public static void forEach(Path file, Consumer<PersonRecord> consumer) throws IOException {
+        scan(file, null, consumer, false, WINDOW_SIZE);
+    }
+
+    // Walks through the file line by line. With a key only rows whose ID matches are decoded.
+    static void scan(Path file, byte[] key, Consumer<PersonRecord> consumer, boolean firstOnly, long windowLimit) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long windowStart = 0;
+
+            while (windowStart < fileSize) {
+                long windowSize = Math.min(windowLimit, fileSize - windowStart);
+                boolean lastWindow = windowStart + windowSize == fileSize;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+                int limit = buffer.limit();
+
+                int lineStart = 0;
+                while (lineStart < limit) {
+                    int lineEnd = indexOfNewline(buffer, lineStart, limit);
+                    if (lineEnd < 0) {
+                        // the row continues after this window, map the next window from its start
+                        if (!lastWindow) break;
+                        lineEnd = limit;
+                    }
+
+                    if (key == null || idMatches(buffer, lineStart, lineEnd, key)) {
+                        String line = decode(buffer, lineStart, lineEnd).trim();
+                        if (!line.isEmpty()) {
+                            consumer.accept(PersonRecord.parse(line));
+                            if (firstOnly) return;
+                        }
+                    }
+                    lineStart = lineEnd + 1;
+                }
+
+                if (lineStart == 0 && !lastWindow) {
+                    throw new IOException("Row longer than " + windowLimit + " bytes in " + file);
+                }
+                windowStart += Math.min(lineStart, limit);
+            }
+        }
+    }
+
+    private static int indexOfNewline(MappedByteBuffer buffer, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == '\n') return i;
+        }
+        return -1;
+    }
+
+    // Compares the first field of the row with the key, ignoring whitespace around it the same
+    // way PersonRecord.getPersonID() trims it
+    private static boolean idMatches(MappedByteBuffer buffer, int start, int end, byte[] key) {
+        int position = start;
+        while (position < end && isWhitespace(buffer.get(position))) {
+            position++;
+        }
+        if (end - position < key.length) return false;
+        for (byte b : key) {
+            if (buffer.get(position++) != b) return false;
+        }
+        while (position < end && isWhitespace(buffer.get(position))) {
+            position++;
+        }
+        return position == end || buffer.get(position) == ',';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    private static String decode(MappedByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -12,12 +12,21 @@ public class Person {
     private String address;
     private String birthday;
     private boolean isSuspended = false;
-    // using hash map to store the demerits points to the
-    private HashMap<LocalDate, Integer> demeritPoints = new HashMap<>();
+    // demerit points of the person sorted by offence date
+    private DemeritHistory demeritPoints = new DemeritHistory();
 
     // Use this global filepath if the path is not set by the user
     private String filePath = "persons.txt";
     private String oldPersonID = null;
+    // rewrite the file row by row instead of keeping the registry in memory
+    private boolean streaming = false;
+    // when set, people are stored in this registry instead of the file at filePath
+    private ShardedRegistry shardedRegistry = null;
+
+    // Rejected records are logged here
+    static final String ERROR_LOG_PATH = "error_log.txt";
+    // formatters are immutable and thread safe, so one is shared instead of building one per call
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
 
     // Sets the old person ID for reference during updates
     public void setOldPersonID(String oldID) {
@@ -29,6 +38,18 @@ public class Person {
         this.filePath = path;
     }
 
+    // Stores people in a registry sharded over several files instead of the single file
+    public void setShardedRegistry(ShardedRegistry registry) {
+        this.shardedRegistry = registry;
+    }
+
+    // Adds, updates, demerits and lookups work on the registry file through StreamingRegistryFile
+    // instead of loading it into memory, for registries larger than the heap. Only the CSV layout
+    // is streamed.
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
 
     // Constructor to initialize a Person object with details
     public Person(String personID, String firstName, String lastName, String address, String birthday) {
@@ -42,46 +63,53 @@ public class Person {
 
     // Adds a new person to the file after validation
     public boolean addPerson() {
-        try {
-            File personsFile = new File(filePath);
-            File errorLogFile = new File("error_log.txt");
-            Set<String> existingLines = new HashSet<>();
-
-            // Read existing lines from the file if it exists
-            if (personsFile.exists()) {
-                BufferedReader reader = new BufferedReader(new FileReader(personsFile));
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    existingLines.add(line.trim());
-                }
-                reader.close();
-            }
+        long start = RegistryMetrics.start();
+        boolean added = add();
+        RegistryMetrics.finish(RegistryMetrics.Operation.ADD_PERSON, start, added);
+        return added;
+    }
 
-            // Prepare writers for appending data to files
-            BufferedWriter personWriter = new BufferedWriter(new FileWriter(personsFile, true));
-            BufferedWriter errorWriter = new BufferedWriter(new FileWriter(errorLogFile, true));
+    private boolean add() {
+        try {
+            PersonRepository repository = repositoryFor(personID);
 
             // Convert person details to CSV format
             String personRecord = toCSV();
 
             // Validate the person details and check for duplicates
-            if (!isValidID(personID) || !isValidAddress(address) || !isValidDate(birthday) || existingLines.contains(personRecord)) {
-                errorWriter.write("Validation failed: " + personRecord);
-                errorWriter.newLine();
-                errorWriter.close();
-                personWriter.close();
-                return false; // Return false if validation fails
-            }
-
-            // Write the valid person record to the file
-            personWriter.write(personRecord);
-            personWriter.newLine();
+            StripedLock.Held held = repository.lockFor(personID);
+            try {
+                ValidationFailure failure = PersonValidator.check(personID, address, birthday);
+                if (failure == null) {
+                    // in streaming mode the file is scanned for the ID instead of loading the registry
+                    if (RegistryMetrics.isEnabled() && !isStreamed()) {
+                        RegistryMetrics.scanned(RegistryMetrics.Operation.ADD_PERSON, repository.rowsOf(personID).length);
+                    }
+                    if (isStreamed() ? StreamingRegistryFile.contains(filePath, personRecord) : repository.contains(personRecord)) {
+                        failure = ValidationFailure.DUPLICATE_RECORD;
+                    }
+                }
+                if (failure != null) {
+                    // the error log is written in the background
+                    RegistryMetrics.validationFailed(failure);
+                    ErrorLog.forFile(ERROR_LOG_PATH).log(failure, personRecord);
+                    return false; // Return false if validation fails
+                }
 
-            personWriter.close();
-            errorWriter.close();
+                // Write the valid person record to the file
+                if (isStreamed()) {
+                    StreamingRegistryFile.append(filePath, PersonRecord.parse(personRecord));
+                } else {
+                    repository.append(PersonRecord.parse(personRecord));
+                }
+                events().publish(RegistryEvent.Type.PERSON_ADDED, personID, null, null, personRecord);
+            } finally {
+                held.unlock();
+            }
             return true; // Return true if the person is added successfully
 
         } catch (IOException e) {
+            RegistryMetrics.error(RegistryMetrics.Operation.ADD_PERSON);
             return false; // Return false if an exception occurs
         }
     }
@@ -89,191 +117,268 @@ public class Person {
 
     // Updates personal details of an existing person in the file
     public boolean updatePersonalDetails() {
-        try {
-            // Read the original file into a list of lines
-            File originalFile = new File(filePath);
-            List<String> originalLines = new ArrayList<>();
-            boolean updated = false;
+        long start = RegistryMetrics.start();
+        boolean updated = update();
+        RegistryMetrics.finish(RegistryMetrics.Operation.UPDATE_PERSONAL_DETAILS, start, updated);
+        return updated;
+    }
 
-            BufferedReader originalReader = new BufferedReader(new FileReader(originalFile));
-            String line;
-            while ((line = originalReader.readLine()) != null) {
-                originalLines.add(line.trim());
+    private boolean update() {
+        try {
+            // check the ID is matching to any avaialble IDs this variable is use to handle
+            // if user try to change id
+            String idToMatch = (oldPersonID == null || oldPersonID.isEmpty()) ? personID : oldPersonID;
+
+            if (isStreamed() || shardedRegistry != null) {
+                // published before the person is unlocked, like below
+                StreamingRegistryFile.RowChanged published = (original, updated) -> publishUpdate(idToMatch, updated);
+                return isStreamed()
+                        ? StreamingRegistryFile.update(filePath, idToMatch, this::applyDetailsTo, true, published) > 0
+                        // an ID change can move the person to another shard
+                        : shardedRegistry.updateFirst(idToMatch, personID, this::applyDetailsTo, published);
             }
-            originalReader.close();
-
-            // Iterate through the lines to find and update the matching record
-            for (int i = 0; i < originalLines.size(); i++) {
-                String[] parts = originalLines.get(i).split(",", -1);
-                if (parts.length < 6) continue;
-
-                String originalID = parts[0].trim();
-                // check the ID is matching to any avaialble IDs this variable is use to handle
-                // if user try to change id
-                String idToMatch = (oldPersonID == null || oldPersonID.isEmpty()) ? personID : oldPersonID;
-
-                // Check if the current line matches the person ID
-                if (!originalID.equals(idToMatch)) continue;
-
-                // Check if the ID is changing and validate the change
-                boolean idChanging = !personID.equals(originalID);
-                if (idChanging && isEvenDigit(originalID.charAt(0))) {
-                    System.out.println("Skipped: even ID can't be changed");
-                    continue;
+            PersonRepository repository = PersonRepository.forFile(filePath);
+
+            // Go through the records with the matching ID to find one that can be updated,
+            // both the old and the new ID stay locked so no one else can take the new ID meanwhile
+            StripedLock.Held held = repository.lockFor(idToMatch, personID);
+            try {
+                int scanned = 0;
+                for (int row : repository.rowsOf(idToMatch)) {
+                    scanned++;
+                    PersonRecord original = repository.get(row);
+                    PersonRecord updated = applyDetailsTo(original);
+                    if (updated == null) continue;
+
+                    repository.set(row, updated);
+                    publishUpdate(idToMatch, updated);
+                    RegistryMetrics.scanned(RegistryMetrics.Operation.UPDATE_PERSONAL_DETAILS, scanned);
+                    return true; // Return true if the update was successful
                 }
+                RegistryMetrics.scanned(RegistryMetrics.Operation.UPDATE_PERSONAL_DETAILS, scanned);
+            } finally {
+                held.unlock();
+            }
+            return false;
 
-                // Extract original details for comparison
-                String originalFirstName = parts[1].trim();
-                String originalLastName = parts[2].trim();
-                String originalAddress = parts[3].trim();
-                String originalBirthday = parts[4].trim();
-                String originalIsSuspended = parts[5].trim();
-                String originalDemerits = (parts.length > 6) ? parts[6] : "";
-
-                // Validate changes based on age and other conditions
-                int age = getAge(originalBirthday);
-                boolean birthdayChanging = !birthday.equals(originalBirthday);
-                boolean nameOrAddressOrIdChanging = !firstName.equals(originalFirstName)
-                        || !lastName.equals(originalLastName)
-                        || !address.equals(originalAddress) ||idChanging;
-
-                // Validate if the age is below 18 address cannot be changed
-                if (age < 18 && !address.equals(originalAddress)) {
-                    System.out.println("Skipped: under 18 can't change address");
-                    continue;
-                }
-                // if birthday is changing you cannot change any other values
-                if (birthdayChanging && nameOrAddressOrIdChanging) {
-                    System.out.println("Skipped: changing birthday and other fields");
-                    continue;
-                }
-                // need to check the new values are valid ID , Valid Address Format , Valid
-                if (!isValidID(personID) || !isValidAddress(address) || !isValidDate(birthday)) {
-                    continue;
-                }
+        } catch (IOException e) {
+            RegistryMetrics.error(RegistryMetrics.Operation.UPDATE_PERSONAL_DETAILS);
+            return false;  // Return false if an exception occurs
+        }
+    }
 
-                // Update the line with new details
-                String updatedLine = String.join(",", personID, firstName, lastName, address, birthday, originalIsSuspended, originalDemerits);
-                originalLines.set(i, updatedLine);
-                updated = true;
-                break;
-            }
+    private void publishUpdate(String idToMatch, PersonRecord updated) {
+        String previousID = idToMatch.equals(personID) ? null : idToMatch;
+        events().publish(RegistryEvent.Type.PERSON_UPDATED, personID, previousID, null, updated.getLine());
+    }
 
-            // Write the updated lines back to the file if changes were made
-            if (updated) {
-                BufferedWriter writer = new BufferedWriter(new FileWriter(filePath));
-                for (String updatedLine : originalLines) {
-                    writer.write(updatedLine);
-                    writer.newLine();
-                }
-                writer.close();
-            }
+    // Applies this person's details to the original record, returns null if the change is not allowed
+    private PersonRecord applyDetailsTo(PersonRecord original) {
+        if (original.fieldCount() < 6) return null;
 
-            return updated; // Return true if the update was successful
+        String originalID = original.getPersonID();
 
-        } catch (IOException e) {
-            return false;  // Return false if an exception occurs
+        // Check if the ID is changing and validate the change
+        boolean idChanging = !personID.equals(originalID);
+        if (idChanging && isEvenDigit(originalID.charAt(0))) {
+            RegistryMetrics.updateSkipped(RegistryMetrics.UpdateSkip.EVEN_ID_CHANGE);
+            return null;
+        }
+
+        // Extract original details for comparison
+        String originalFirstName = original.getFirstName();
+        String originalLastName = original.getLastName();
+        String originalAddress = original.getAddress();
+        String originalBirthday = original.getBirthday();
+        String originalIsSuspended = original.getSuspended();
+        String originalDemerits = original.getDemerits();
+
+        // Validate changes based on age and other conditions
+        int age = getAge(originalBirthday);
+        boolean birthdayChanging = !birthday.equals(originalBirthday);
+        boolean nameOrAddressOrIdChanging = !firstName.equals(originalFirstName)
+                || !lastName.equals(originalLastName)
+                || !address.equals(originalAddress) ||idChanging;
+
+        // Validate if the age is below 18 address cannot be changed
+        if (age < 18 && !address.equals(originalAddress)) {
+            RegistryMetrics.updateSkipped(RegistryMetrics.UpdateSkip.UNDER_18_ADDRESS_CHANGE);
+            return null;
+        }
+        // if birthday is changing you cannot change any other values
+        if (birthdayChanging && nameOrAddressOrIdChanging) {
+            RegistryMetrics.updateSkipped(RegistryMetrics.UpdateSkip.BIRTHDAY_WITH_OTHER_CHANGES);
+            return null;
+        }
+        // need to check the new values are valid ID , Valid Address Format , Valid
+        if (!isValidID(personID) || !isValidAddress(address) || !isValidDate(birthday)) {
+            RegistryMetrics.updateSkipped(RegistryMetrics.UpdateSkip.INVALID_DETAILS);
+            return null;
         }
+
+        // Build the record with the new details
+        return PersonRecord.of(personID, firstName, lastName, address, birthday, originalIsSuspended, originalDemerits);
     }
 
     // Adds demerit points to a person and updates suspension status if necessary
     public String addDemeritPoints(String personID, int points, String dateStr) {
-        if (!dateStr.matches("\\d{2}-\\d{2}-\\d{4}") || points < 1 || points > 6) return "Failed";
+        long start = RegistryMetrics.start();
+        String status = addDemerits(personID, points, dateStr);
+        RegistryMetrics.finish(RegistryMetrics.Operation.ADD_DEMERIT_POINTS, start, status.equals("Success"));
+        return status;
+    }
+
+    private String addDemerits(String personID, int points, String dateStr) {
+        if (!isValidDate(dateStr) || points < 1 || points > 6) return "Failed";
 
         try {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-            LocalDate offenseDate = LocalDate.parse(dateStr, formatter);
-            List<String> lines = new ArrayList<>();
-
-            BufferedReader reader = new BufferedReader(new FileReader(filePath));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                lines.add(line);
+            LocalDate offenseDate = LocalDate.parse(dateStr, FORMATTER);
+
+            String detail = DemeritHistory.single(offenseDate, points).format();
+            List<DemeritLedger.Offence> offence = List.of(new DemeritLedger.Offence(offenseDate, points));
+            // in both modes the rows are stored first, then the offence goes to the ledger once,
+            // which never fails a stored change, and every changed row is published while locked
+            if (isStreamed()) {
+                boolean[] recorded = {false};
+                int changed = StreamingRegistryFile.update(filePath, personID.trim(), record -> {
+                            try {
+                                return addDemeritTo(record, offenseDate, points, ledger());
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }, false, (original, updated) -> {
+                            if (!recorded[0]) {
+                                ledger().recordStored(personID.trim(), offence);
+                                recorded[0] = true;
+                            }
+                            publishDemerits(events(), original, updated, detail);
+                        });
+                return (changed > 0) ? "Success" : "Failed";
             }
-            reader.close();
+            PersonRepository repository = repositoryFor(personID.trim());
 
             boolean updated = false;
-            BufferedWriter writer = new BufferedWriter(new FileWriter(filePath));
-
-            for (String l : lines) {
-                String[] parts = l.split(",", -1);
-                String currentID = parts[0].trim();
-
-                if (currentID.equals(personID.trim())) {
-                    // Extract data
-                    int age = getAge(parts[4].trim());
-                    String existingDemerits = (parts.length > 6) ? parts[6].trim() : "";
-                    HashMap<LocalDate, Integer> allDemerits = new HashMap<>();
-
-                    if (!existingDemerits.isEmpty()) {
-                        for (String entry : existingDemerits.split(";")) {
-                            String[] pair = entry.split(":");
-                            if (pair.length == 2) {
-                                allDemerits.put(LocalDate.parse(pair[0].trim(), formatter), Integer.parseInt(pair[1].trim()));
-                            }
-                        }
-                    }
-
-                    // Add new demerit point
-                    allDemerits.put(offenseDate, points);
-
-                    // This line of code adds up all the demerit points a person got in the last two years.
-                    // It looks through a list of demerits, where each one has a date and a number of points.
-                    // It filters out the old ones and keeps only those that happened in the past two years.
-                    // Then, it takes the points from those recent demerits and adds them together.
-                    // This total is used to check if the person should be suspended, based on their age.
-                    int totalRecentPoints = allDemerits.entrySet().stream()
-                            .filter(e -> e.getKey().isAfter(LocalDate.now().minusYears(2)))
-                            .mapToInt(Map.Entry::getValue)
-                            .sum();
-                    System.out.println(totalRecentPoints);
-                    boolean suspend = (age < 21 && totalRecentPoints > 6) || (age >= 21 && totalRecentPoints > 12);
-
-                    // Build updated line
-                    List<String> updatedEntries = new ArrayList<>();
-                    for (Map.Entry<LocalDate, Integer> entry : allDemerits.entrySet()) {
-                        updatedEntries.add(entry.getKey().format(formatter) + ":" + entry.getValue());
+            StripedLock.Held held = repository.lockFor(personID.trim());
+            try {
+                int[] rows = repository.rowsOf(personID.trim());
+                RegistryMetrics.scanned(RegistryMetrics.Operation.ADD_DEMERIT_POINTS, rows.length);
+                // the rows hand their expired offences to the ledger before the new one is recorded,
+                // so an offence on an expired day is not taken for one the row already had
+                PersonRecord[] previous = new PersonRecord[rows.length];
+                PersonRecord[] changed = new PersonRecord[rows.length];
+                for (int i = 0; i < rows.length; i++) {
+                    previous[i] = repository.get(rows[i]);
+                    changed[i] = addDemeritTo(previous[i], offenseDate, points, ledger());
+                }
+                try {
+                    for (int i = 0; i < rows.length; i++) {
+                        repository.set(rows[i], changed[i]);
+                        publishDemerits(events(), previous[i], changed[i], detail);
+                        updated = true;
                     }
-
-                    String newLine = String.join(",", parts[0], parts[1], parts[2], parts[3], parts[4], String.valueOf(suspend), String.join(";", updatedEntries));
-                    writer.write(newLine);
-                    writer.newLine();
-                    updated = true;
-
-                } else {
-                    // Write the original unmodified line
-                    writer.write(l.trim());
-                    writer.newLine();
+                } catch (IOException e) {
+                    // a row that is already stored keeps the offence, so the change is made
+                    if (!updated) throw e;
+                    RegistryMetrics.error(RegistryMetrics.Operation.ADD_DEMERIT_POINTS);
                 }
+                if (updated) ledger().recordStored(personID.trim(), offence);
+            } finally {
+                held.unlock();
             }
 
-            writer.close();
             return updated ? "Success" : "Failed";
 
         } catch (Exception e) {
+            RegistryMetrics.error(RegistryMetrics.Operation.ADD_DEMERIT_POINTS);
             return "Failed";
         }
     }
 
-    // Validates if the person ID meets the required format
-    private boolean isValidID(String id) {
-        //Id length should equal 10
-        if (id == null || id.length() != 10) return false;
+    // Adds one offence to the history of the record and works out the suspension status again.
+    // The row only keeps the two year window, older offences are handed to the ledger, which keeps
+    // every offence, so the row stays small however long the history of the person gets.
+    private static PersonRecord addDemeritTo(PersonRecord record, LocalDate offenseDate, int points,
+                                             DemeritLedger ledger) throws IOException {
+        int lastExpiredDay = DemeritLedger.lastExpiredDay(LocalDate.now());
+        DemeritHistory allDemerits = ledger.takeExpired(record.getPersonID(), parseDemerits(record.getDemerits()), lastExpiredDay);
+        // a second offence on the same day adds to the points of that day
+        if (offenseDate.toEpochDay() > lastExpiredDay) allDemerits.add(offenseDate, points);
+
+        return withDemerits(record, allDemerits, recentPoints(allDemerits));
+    }
+
+    // Returns the stored record with the given ID, or null if there is none. It is read from the
+    // same place the changes of this person go to: the sharded registry, the streamed file without
+    // loading it, or the shared repository of the file.
+    public PersonRecord lookup(String personID) throws IOException {
+        String id = personID.trim();
+        if (shardedRegistry != null) return shardedRegistry.find(id);
+        if (isStreamed()) return StreamingRegistryFile.find(filePath, id);
+        return repositoryFor(id).find(id);
+    }
 
-        if (!id.substring(0, 2).matches("[2-9]{2}")) return false;
+    // Publishes the offences added to a record and the change of its suspension status, if any
+    static void publishDemerits(RegistryEvents events, PersonRecord previous, PersonRecord updated, String detail) {
+        events.publish(RegistryEvent.Type.DEMERITS_ADDED, updated.getPersonID(), null, detail, updated.getLine());
+        publishSuspension(events, previous, updated);
+    }
 
-        // check the last 2 digts in the ID are two capital letters
-        if (!id.substring(8).matches("[A-Z]{2}")) return false;
+    // Publishes SUSPENDED or REINSTATED if the suspension status of the record changed
+    static void publishSuspension(RegistryEvents events, PersonRecord previous, PersonRecord updated) {
+        if (previous.isSuspended() == updated.isSuspended()) return;
+        RegistryEvent.Type type = updated.isSuspended() ? RegistryEvent.Type.SUSPENDED : RegistryEvent.Type.REINSTATED;
+        events.publish(type, updated.getPersonID(), null, null, updated.getLine());
+    }
 
-        // checking the special character count in the middle
-        String middle = id.substring(2, 8);
-        int specialCount = 0;
-        for (char c : middle.toCharArray()) {
-            if (!Character.isLetterOrDigit(c)) {
-                specialCount++;
-            }
-        }
-        return specialCount >= 2;
+    // Repository that holds the given personID
+    private PersonRepository repositoryFor(String id) {
+        return (shardedRegistry != null) ? shardedRegistry.shardFor(id) : PersonRepository.forFile(filePath);
+    }
+
+    // Ledger that keeps every offence of the registry this person is stored in
+    private DemeritLedger ledger() {
+        return (shardedRegistry != null) ? shardedRegistry.ledger() : DemeritLedger.forFile(filePath);
+    }
+
+    // Change events of the registry this person is stored in
+    private RegistryEvents events() {
+        return (shardedRegistry != null) ? shardedRegistry.events() : RegistryEvents.forFile(filePath);
+    }
+
+    // True if this person works on the registry file in streaming mode
+    private boolean isStreamed() {
+        return streaming && shardedRegistry == null && !filePath.endsWith(".bin");
+    }
+
+    // Reads a demerit history in the "dd-MM-yyyy:points;..." format
+    static DemeritHistory parseDemerits(String demerits) {
+        return DemeritHistory.parse(demerits);
+    }
+
+    // Adds up all the demerit points a person got in the last two years.
+    // The history is sorted by date, so the offences older than two years are skipped with a
+    // binary search and only the recent points are added together.
+    // This total is used to check if the person should be suspended, based on their age.
+    static int recentPoints(DemeritHistory allDemerits) {
+        return allDemerits.recentPoints(LocalDate.now());
+    }
+
+    // Builds the record with the given demerit history and the suspension status for the recent points
+    static PersonRecord withDemerits(PersonRecord record, DemeritHistory allDemerits, int totalRecentPoints) {
+        boolean suspend = shouldSuspend(getAge(record.getBirthday()), totalRecentPoints);
+
+        return PersonRecord.of(record.field(0), record.field(1), record.field(2), record.field(3), record.field(4),
+                String.valueOf(suspend), allDemerits.format());
+    }
+
+    // Under 21 a person is suspended above 6 recent points, from 21 on above 12
+    static boolean shouldSuspend(int age, int totalRecentPoints) {
+        return (age < 21 && totalRecentPoints > 6) || (age >= 21 && totalRecentPoints > 12);
+    }
+
+    // Validates if the person ID meets the required format
+    static boolean isValidID(String id) {
+        return PersonValidator.isValidID(id);
     }
 
     /*
@@ -285,23 +390,26 @@ public class Person {
      */
 
 
-    // Checks if the address is in the correct format
-    private boolean isValidAddress(String address) {
-        // check the address is in the correct format using regex function and must include victoria in state field
-        return address.matches("\\d+\\|[^|]+\\|[^|]+\\|Victoria\\|[^|]+");
+    // Checks if the address is in the correct format and the state is Victoria
+    static boolean isValidAddress(String address) {
+        return PersonValidator.isValidAddress(address);
     }
 
     // Checks if the date is in the correct foramt.
-    private boolean isValidDate(String date) {
-        return date.matches("\\d{2}-\\d{2}-\\d{4}");
+    static boolean isValidDate(String date) {
+        return PersonValidator.isValidDate(date);
     }
 
     // Determines the age of a person based on their date of birth
-     private int getAge(String dob) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-        LocalDate birthDate = LocalDate.parse(dob, formatter);
-        return LocalDate.now().getYear() - birthDate.getYear();
-    } 
+    static int getAge(String dob) {
+        return getAge(dob, LocalDate.now());
+    }
+
+    // Age of a person on the given day, counted the same way as getAge
+    static int getAge(String dob, LocalDate today) {
+        LocalDate birthDate = LocalDate.parse(dob, FORMATTER);
+        return today.getYear() - birthDate.getYear();
+    }
 
     // Checks if a character is an even digit
     private boolean isEvenDigit(char ch) {
@@ -0,0 +1,93 @@
+package com.roadregistry;
+
+// One row of the registry file in the same comma separated layout produced by Person.toCSV().
+// The fields are kept exactly as they were read so untouched rows are written back unchanged.
+public final class PersonRecord {
+    private final String line;
+    private final String[] parts;
+
+    private PersonRecord(String line) {
+        this(line, line.split(",", -1));
+    }
+
+    private PersonRecord(String line, String[] parts) {
+        this.line = line;
+        this.parts = parts;
+    }
+
+    // Creates a record from a raw line of the registry file
+    public static PersonRecord parse(String line) {
+        return new PersonRecord(line);
+    }
+
+    // Creates a record from a line whose comma positions are already known, as stored in a
+    // RegistrySnapshot, without searching the line for them again
+    static PersonRecord parse(String line, int[] commas) {
+        String[] parts = new String[commas.length + 1];
+        int start = 0;
+        for (int i = 0; i < commas.length; i++) {
+            parts[i] = line.substring(start, commas[i]);
+            start = commas[i] + 1;
+        }
+        parts[commas.length] = line.substring(start);
+        return new PersonRecord(line, parts);
+    }
+
+    // Creates a record by joining the given fields with commas
+    public static PersonRecord of(String... fields) {
+        return new PersonRecord(String.join(",", fields));
+    }
+
+    // Returns the line as it is stored in the file
+    public String getLine() {
+        return line;
+    }
+
+    // Number of comma separated fields on the line
+    public int fieldCount() {
+        return parts.length;
+    }
+
+    // Returns the raw (untrimmed) field at the given position
+    public String field(int index) {
+        return parts[index];
+    }
+
+    public String getPersonID() {
+        return parts[0].trim();
+    }
+
+    public String getFirstName() {
+        return parts[1].trim();
+    }
+
+    public String getLastName() {
+        return parts[2].trim();
+    }
+
+    public String getAddress() {
+        return parts[3].trim();
+    }
+
+    public String getBirthday() {
+        return parts[4].trim();
+    }
+
+    public String getSuspended() {
+        return parts[5].trim();
+    }
+
+    public boolean isSuspended() {
+        return parts.length > 5 && Boolean.parseBoolean(parts[5].trim());
+    }
+
+    // Demerit history in the "dd-MM-yyyy:points;..." format, empty if the person has none
+    public String getDemerits() {
+        return (parts.length > 6) ? parts[6] : "";
+    }
+
+    @Override
+    public String toString() {
+        return line;
+    }
+}
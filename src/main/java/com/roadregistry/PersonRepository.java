@@ -0,0 +1,623 @@
+package com.roadregistry;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+// Keeps the content of a registry file in memory and indexes the rows by personID so that
+// lookups, duplicate checks and updates do not have to re-read the whole file on every call.
+// There is one shared repository per file path, obtained through forFile().
+//
+// Changes are not written into the registry file straight away. Each one is appended as a small
+// record to a write-ahead log next to it ("persons.txt.wal") and the log is replayed when the
+// file is loaded. A background task folds the log into a new copy of the registry file and
+// renames it into place, so the cost of a single change does not depend on the registry size.
+// A change is forced to disk with the log before the call returns, and the new copy of the file
+// is forced to disk before it replaces the old one, so neither is lost if the machine crashes.
+// A log that was written against another version of the registry file than the one on disk
+// holds changes that are not in the file; the repository then refuses to load instead of
+// dropping them, until someone has looked at the log and moved it away.
+//
+// A registry file whose name ends with ".bin" is kept in the binary layout of BinaryRegistryFile
+// instead of the CSV layout; the write-ahead log is the same for both.
+//
+// Every compaction of a CSV registry also writes a RegistrySnapshot of the new file
+// ("persons.txt.snap"), and the periodic task writes one for a file that was loaded without it.
+// Loading uses the snapshot while it matches the registry file and falls back to reading the file
+// when the snapshot is missing, stale or damaged.
+//
+// The repository is safe to share between threads. Callers that read a record and write back a
+// changed version take the lock for that personID through lockFor() around the whole change, so
+// changes to different people run in parallel and changes to the same person do not get lost.
+//
+// Other components can keep derived state (for example running demerit totals) in step with the
+// rows by registering a Listener, which sees every row as it is loaded, added, replaced or removed.
+//
+// A removed row keeps its position as an empty slot until the next compaction, so the positions
+// used by the log and by listeners stay valid; after a compaction that dropped rows the
+// repository is read again from the new file.
+public class PersonRepository {
+    private static final Map<String, PersonRepository> OPEN = new HashMap<>();
+
+    // compact once this many log records are waiting, or on the next periodic check
+    static final int COMPACT_THRESHOLD = 50_000;
+    private static final long COMPACT_INTERVAL_SECONDS = 60;
+    private static final int LOCK_STRIPES = 256;
+    private static final ScheduledExecutorService COMPACTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "registry-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        COMPACTOR.scheduleWithFixedDelay(() -> compactOpen(false), COMPACT_INTERVAL_SECONDS, COMPACT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> compactOpen(true), "registry-compactor-shutdown"));
+    }
+
+    private final File file;
+    private final boolean binary;
+    private final File logFile;
+    private final File snapshotFile;
+    private final StripedLock locks = new StripedLock(LOCK_STRIPES);
+    private FileOutputStream logStream;
+    private BufferedWriter logWriter;
+    private int pendingRecords = 0;
+    private int removedRows = 0;
+
+    // rows in file order, the index only stores positions into this list
+    private final ArrayList<PersonRecord> rows = new ArrayList<>();
+    private Map<String, Slot> index = new HashMap<>();
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // size and modification time of the file when it was last loaded or written by us,
+    // used to notice that someone else has changed the file in the meantime
+    private long knownLength = -1;
+    private long knownModified = -1;
+    private boolean loaded = false;
+    // true while the snapshot file matches the registry file
+    private boolean snapshotCurrent = false;
+
+    // A row position in the index. IDs are expected to be unique but the file format does not
+    // enforce it, so rows sharing an ID are chained in file order.
+    private static final class Slot {
+        final int row;
+        Slot next;
+
+        Slot(int row) {
+            this.row = row;
+        }
+    }
+
+    // Told about every change to the rows. Listeners are called while the repository is locked, in
+    // the order the changes happen, so they must be quick and must not wait for other threads.
+    public interface Listener {
+        // A row was added (previous is null), replaced or removed (current is null)
+        void rowChanged(int row, PersonRecord previous, PersonRecord current);
+
+        // All rows are about to be read again from the file, forget everything seen so far
+        void reloaded();
+    }
+
+    private PersonRepository(File file) {
+        this.file = file;
+        this.binary = file.getName().endsWith(".bin");
+        this.logFile = new File(file.getPath() + ".wal");
+        this.snapshotFile = new File(file.getPath() + ".snap");
+    }
+
+    // Returns the shared repository for the given file path
+    public static PersonRepository forFile(String path) {
+        File file = new File(path).getAbsoluteFile();
+        synchronized (OPEN) {
+            return OPEN.computeIfAbsent(file.getPath(), key -> new PersonRepository(file));
+        }
+    }
+
+    // Drops the shared repository for the path without compacting it, as if the program had
+    // stopped. Only used by tests to check what is recovered from the files on disk.
+    static void evict(String path) throws IOException {
+        PersonRepository repository;
+        synchronized (OPEN) {
+            repository = OPEN.remove(new File(path).getAbsoluteFile().getPath());
+        }
+        if (repository != null) {
+            synchronized (repository) {
+                repository.closeLog();
+            }
+        }
+    }
+
+    // Registers a listener for all later changes. Rows already loaded are not replayed to it, a
+    // listener that needs them reads them while holding the repository lock.
+    public synchronized void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    // Locks the given personIDs until the returned handle is unlocked. Used around a read-modify-write
+    // of a person; an ID change has to lock both the old and the new ID.
+    public StripedLock.Held lockFor(String... personIDs) {
+        return locks.lock(personIDs);
+    }
+
+    // True if changes are waiting in the write-ahead log, checked without loading the registry
+    public synchronized boolean hasPendingChanges() {
+        return pendingRecords > 0 || logFile.exists();
+    }
+
+    // Locks every personID, used by bulk operations that check and add many people at once
+    public StripedLock.Held lockAll() {
+        return locks.lockAll();
+    }
+
+    // Returns true if a row with exactly the same content is already stored
+    public synchronized boolean contains(String line) throws IOException {
+        refreshIfChanged();
+        String id = line.split(",", -1)[0].trim();
+        for (Slot slot = index.get(id); slot != null; slot = slot.next) {
+            if (rows.get(slot.row).getLine().equals(line)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Returns the positions of all rows with the given ID, in file order
+    public synchronized int[] rowsOf(String personID) throws IOException {
+        refreshIfChanged();
+        int count = 0;
+        for (Slot slot = index.get(personID); slot != null; slot = slot.next) {
+            count++;
+        }
+        int[] result = new int[count];
+        int i = 0;
+        for (Slot slot = index.get(personID); slot != null; slot = slot.next) {
+            result[i++] = slot.row;
+        }
+        return result;
+    }
+
+    // Returns the record stored at the given row, null if the row was removed
+    public synchronized PersonRecord get(int row) {
+        return rows.get(row);
+    }
+
+    // Returns the first record with the given ID, or null if there is none. A binary registry that
+    // is not loaded yet and has nothing in the log answers through the ID index of its file, so a
+    // lookup after a start does not have to decode every record.
+    public synchronized PersonRecord find(String personID) throws IOException {
+        if (binary && !loaded && pendingRecords == 0 && !logFile.exists() && file.length() > 0) {
+            return BinaryRegistryFile.find(file.toPath(), personID);
+        }
+        refreshIfChanged();
+        Slot slot = index.get(personID);
+        return (slot == null) ? null : rows.get(slot.row);
+    }
+
+    // Number of rows in the registry, removed rows count until the next compaction
+    public synchronized int size() throws IOException {
+        refreshIfChanged();
+        return rows.size();
+    }
+
+    // Adds a new record at the end of the file
+    public synchronized void append(PersonRecord record) throws IOException {
+        refreshIfChanged();
+        writeLog("A", record.getLine());
+        applyAppend(record);
+    }
+
+    // Adds several records at the end of the file with a single write to the log
+    public synchronized void appendAll(List<PersonRecord> records) throws IOException {
+        refreshIfChanged();
+        if (records.isEmpty()) return;
+        for (PersonRecord record : records) {
+            writeLogRecord("A", record.getLine());
+        }
+        flushLog(records.size());
+        records.forEach(this::applyAppend);
+    }
+
+    // Replaces the record at the given row
+    public synchronized void set(int row, PersonRecord record) throws IOException {
+        refreshIfChanged();
+        if (rows.get(row) == null) throw new IllegalArgumentException("Row " + row + " was removed");
+        writeLog("S", row + "," + record.getLine());
+        applySet(row, record);
+    }
+
+    // Removes the record at the given row
+    public synchronized void remove(int row) throws IOException {
+        refreshIfChanged();
+        if (rows.get(row) == null) return;
+        writeLog("R", String.valueOf(row));
+        applyRemove(row);
+    }
+
+    // Folds the write-ahead log into the registry file. The new content is written to a temporary
+    // file first and renamed over the old one, so a crash never leaves a half written registry.
+    // Dropping removed rows moves the positions of the rows after them, so all personIDs are
+    // locked first and nobody can be holding a position from rowsOf() meanwhile.
+    public void compact() throws IOException {
+        StripedLock.Held held = locks.lockAll();
+        try {
+            synchronized (this) {
+                compactLocked();
+            }
+        } finally {
+            held.unlock();
+        }
+    }
+
+    // Compacts the registry and makes sure the registry file has a current snapshot, so the next
+    // start can load the rows from it
+    public void checkpoint() throws IOException {
+        StripedLock.Held held = locks.lockAll();
+        try {
+            synchronized (this) {
+                compactLocked();
+                refreshIfChanged();
+                if (!snapshotCurrent && removedRows == 0 && pendingRecords == 0) {
+                    writeSnapshot(rows);
+                }
+            }
+        } finally {
+            held.unlock();
+        }
+    }
+
+    private void compactLocked() throws IOException {
+        if (pendingRecords == 0 && !logFile.exists()) return;
+        // a log left by an earlier run has to be replayed before the rows are written out
+        refreshIfChanged();
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        if (binary) {
+            BinaryRegistryFile.write((removedRows == 0) ? rows : presentRows(), tempFile.toPath());
+            forceToDisk(tempFile.toPath());
+        } else {
+            FileOutputStream out = new FileOutputStream(tempFile);
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out))) {
+                for (PersonRecord record : rows) {
+                    if (record == null) continue;
+                    writer.write(record.getLine());
+                    writer.newLine();
+                }
+                writer.flush();
+                out.getFD().sync();
+            }
+        }
+        markLogCompacted(tempFile);
+        moveIntoPlace(tempFile.toPath(), file.toPath());
+        rememberFileState();
+        RegistryMetrics.bytesWritten(knownLength);
+        snapshotCurrent = false;
+        writeSnapshot(rows);
+
+        // the log belongs to the previous registry file, start a new one
+        closeLog();
+        Files.deleteIfExists(logFile.toPath());
+        pendingRecords = 0;
+
+        // the removed rows are gone from the new file, the positions of the rows after them moved
+        if (removedRows > 0) {
+            load();
+        }
+    }
+
+    private List<PersonRecord> presentRows() {
+        List<PersonRecord> present = new ArrayList<>(rows.size() - removedRows);
+        for (PersonRecord record : rows) {
+            if (record != null) present.add(record);
+        }
+        return present;
+    }
+
+    // Compacts every open repository, used by the background task and on shutdown
+    private static void compactOpen(boolean all) {
+        List<PersonRepository> repositories;
+        synchronized (OPEN) {
+            repositories = new ArrayList<>(OPEN.values());
+        }
+        for (PersonRepository repository : repositories) {
+            try {
+                boolean due;
+                synchronized (repository) {
+                    due = all || repository.pendingRecords > 0
+                            || (!repository.binary && repository.loaded && !repository.snapshotCurrent);
+                }
+                if (due) {
+                    repository.checkpoint();
+                }
+            } catch (IOException e) {
+                // leave the log in place, it is replayed on the next load
+            }
+        }
+    }
+
+    // Forces the content of a file that was written through another stream to disk
+    static void forceToDisk(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    // Renames the source over the target, atomically where the file system supports it
+    static void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Reloads the file if it was modified outside of this repository
+    private void refreshIfChanged() throws IOException {
+        long length = file.exists() ? file.length() : -1;
+        long modified = file.exists() ? file.lastModified() : -1;
+        if (!loaded || length != knownLength || modified != knownModified) {
+            load();
+        }
+    }
+
+    // Reads the whole file into memory, replays the write-ahead log and rebuilds the index
+    private void load() throws IOException {
+        closeLog();
+        pendingRecords = 0;
+        loaded = true;
+        snapshotCurrent = false;
+        rows.clear();
+        index.clear();
+        removedRows = 0;
+        listeners.forEach(Listener::reloaded);
+        if (binary && file.length() > 0) {
+            loadRows(BinaryRegistryFile.read(file.toPath()));
+        } else if (!binary && file.exists()) {
+            List<PersonRecord> snapshot = RegistrySnapshot.read(snapshotFile.toPath(), file.length(), file.lastModified());
+            snapshotCurrent = snapshot != null;
+            if (snapshotCurrent) {
+                loadRows(snapshot);
+            } else {
+                MappedPersonFile.forEach(file.toPath(), this::applyAppend);
+            }
+        }
+        rememberFileState();
+        RegistryMetrics.bytesRead(Math.max(knownLength, 0));
+        RegistryMetrics.rowsRead(rows.size());
+        try {
+            replayLog();
+        } catch (IOException e) {
+            // load again on the next call, so nothing is written on top of rows missing the log
+            loaded = false;
+            throw e;
+        }
+    }
+
+    // Adds rows whose number is known up front, sizing the list and the index for them once
+    private void loadRows(List<PersonRecord> records) {
+        rows.ensureCapacity(records.size());
+        index = HashMap.newHashMap(records.size());
+        records.forEach(this::applyAppend);
+    }
+
+    // Applies the log records written since the registry file was last compacted. The first line
+    // of the log names the registry file state it was written against. A log for another version
+    // of the file is only dropped if a compaction marked it as folded into the current file and
+    // stopped before deleting it; otherwise the file was replaced behind our back and the log
+    // holds changes that callers were told succeeded, so loading fails and the log is kept.
+    private void replayLog() throws IOException {
+        if (!logFile.exists()) return;
+
+        RegistryMetrics.bytesRead(logFile.length());
+        boolean intact = true;
+        BufferedReader reader = new BufferedReader(new FileReader(logFile, StandardCharsets.UTF_8));
+        String header = reader.readLine();
+        if (header == null || !header.equals(logHeader())) {
+            boolean compacted = (header == null);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                compacted |= line.equals(compactedMarker(knownLength, knownModified));
+            }
+            reader.close();
+            if (!compacted) {
+                throw new IOException("The write-ahead log " + logFile + " was written against another version of "
+                        + file + ", move it away after checking its changes to load the file as it is");
+            }
+            Files.deleteIfExists(logFile.toPath());
+            return;
+        }
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!replayRecord(line)) {
+                // a torn record at the end of the log, everything before it is kept
+                intact = false;
+                break;
+            }
+            pendingRecords++;
+        }
+        reader.close();
+
+        if (!intact) {
+            compactLocked();
+        }
+    }
+
+    // Applies one log record, returns false if the record is damaged
+    private boolean replayRecord(String line) {
+        String[] parts = line.split(",", 3);
+        if (parts.length < 3 || !checksum(parts[2]).equals(parts[1])) return false;
+
+        switch (parts[0]) {
+            case "A":
+                applyAppend(PersonRecord.parse(parts[2]));
+                return true;
+            case "S":
+                int comma = parts[2].indexOf(',');
+                int row = Integer.parseInt(parts[2].substring(0, comma));
+                if (row >= rows.size()) return false;
+                applySet(row, PersonRecord.parse(parts[2].substring(comma + 1)));
+                return true;
+            case "R":
+                int removed = Integer.parseInt(parts[2]);
+                if (removed >= rows.size()) return false;
+                applyRemove(removed);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Appends one record to the log as "operation,checksum,payload"
+    private void writeLog(String operation, String payload) throws IOException {
+        writeLogRecord(operation, payload);
+        flushLog(1);
+    }
+
+    private void writeLogRecord(String operation, String payload) throws IOException {
+        if (logWriter == null) {
+            boolean newLog = !logFile.exists();
+            logStream = new FileOutputStream(logFile, true);
+            logWriter = new BufferedWriter(new OutputStreamWriter(logStream, StandardCharsets.UTF_8));
+            if (newLog) {
+                logWriter.write(logHeader());
+                logWriter.newLine();
+            }
+        }
+        String record = operation + "," + checksum(payload) + "," + payload;
+        logWriter.write(record);
+        logWriter.newLine();
+        RegistryMetrics.bytesWritten(record.length() + 1);
+    }
+
+    // The records written so far are on disk when this returns
+    private void flushLog(int records) throws IOException {
+        logWriter.flush();
+        logStream.getFD().sync();
+        pendingRecords += records;
+        if (pendingRecords >= COMPACT_THRESHOLD) {
+            COMPACTOR.execute(() -> compactOpen(false));
+        }
+    }
+
+    // Marks the log as folded into the given compacted file before the file is moved into place.
+    // A rename keeps the length and modification time, so after a crash between the move and the
+    // deletion of the log the marker matches the registry file. It starts on a new line in case
+    // the log ends with a torn record.
+    private void markLogCompacted(File compacted) throws IOException {
+        closeLog();
+        if (!logFile.exists()) return;
+        try (FileOutputStream out = new FileOutputStream(logFile, true)) {
+            out.write(("\n" + compactedMarker(compacted.length(), compacted.lastModified()) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+    }
+
+    private static String compactedMarker(long length, long modified) {
+        return "#compacted," + length + "," + modified;
+    }
+
+    private void closeLog() throws IOException {
+        if (logWriter != null) {
+            logWriter.close();
+            logWriter = null;
+            logStream = null;
+        }
+    }
+
+    private String logHeader() {
+        return "#wal," + knownLength + "," + knownModified;
+    }
+
+    private static String checksum(String payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    private void applyAppend(PersonRecord record) {
+        rows.add(record);
+        addToIndex(record.getPersonID(), rows.size() - 1);
+        for (Listener listener : listeners) {
+            listener.rowChanged(rows.size() - 1, null, record);
+        }
+    }
+
+    private void applySet(int row, PersonRecord record) {
+        PersonRecord previous = rows.set(row, record);
+        if (previous == null) {
+            removedRows--;
+            addToIndex(record.getPersonID(), row);
+        } else if (!previous.getPersonID().equals(record.getPersonID())) {
+            removeFromIndex(previous.getPersonID(), row);
+            addToIndex(record.getPersonID(), row);
+        }
+        for (Listener listener : listeners) {
+            listener.rowChanged(row, previous, record);
+        }
+    }
+
+    private void applyRemove(int row) {
+        PersonRecord previous = rows.set(row, null);
+        if (previous == null) return;
+        removedRows++;
+        removeFromIndex(previous.getPersonID(), row);
+        for (Listener listener : listeners) {
+            listener.rowChanged(row, previous, null);
+        }
+    }
+
+    // Writes the snapshot of the registry file, which holds the given rows. A snapshot is only an
+    // aid for the next start, so failing to write one does not fail the change that triggered it.
+    private void writeSnapshot(List<PersonRecord> content) {
+        if (binary || !file.exists()) return;
+        try {
+            snapshotCurrent = RegistrySnapshot.write(content, knownLength, knownModified, snapshotFile.toPath());
+        } catch (IOException e) {
+            snapshotFile.delete();
+        }
+    }
+
+    private void rememberFileState() {
+        knownLength = file.exists() ? file.length() : -1;
+        knownModified = file.exists() ? file.lastModified() : -1;
+    }
+
+    private void addToIndex(String personID, int row) {
+        Slot added = new Slot(row);
+        Slot head = index.get(personID);
+        if (head == null || head.row > row) {
+            added.next = head;
+            index.put(personID, added);
+            return;
+        }
+        Slot current = head;
+        while (current.next != null && current.next.row < row) {
+            current = current.next;
+        }
+        added.next = current.next;
+        current.next = added;
+    }
+
+    private void removeFromIndex(String personID, int row) {
+        Slot head = index.get(personID);
+        if (head == null) return;
+        if (head.row == row) {
+            if (head.next == null) {
+                index.remove(personID);
+            } else {
+                index.put(personID, head.next);
+            }
+            return;
+        }
+        for (Slot current = head; current.next != null; current = current.next) {
+            if (current.next.row == row) {
+                current.next = current.next.next;
+                return;
+            }
+        }
+    }
+}
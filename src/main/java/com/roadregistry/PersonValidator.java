@@ -0,0 +1,99 @@
+package com.roadregistry;
+
+// Checks the ID, address and date fields of a person. The checks walk over the characters
+// directly instead of using String.matches, which compiles a new Pattern on every call, and they
+// accept and reject exactly the same values as the regular expressions they replace. Each check
+// returns the reason a value is rejected, or null if it is valid.
+public class PersonValidator {
+
+    private PersonValidator() {
+    }
+
+    // Checks all fields of a new or updated person, returns the first problem found or null
+    public static ValidationFailure check(String id, String address, String date) {
+        ValidationFailure failure = checkID(id);
+        if (failure == null) failure = checkAddress(address);
+        if (failure == null) failure = checkDate(date);
+        return failure;
+    }
+
+    // 10 characters: two digits 2-9, six characters with at least two special characters,
+    // two capital letters
+    public static ValidationFailure checkID(String id) {
+        if (id == null || id.length() != 10) return ValidationFailure.ID_LENGTH;
+
+        if (!isDigitTwoToNine(id.charAt(0)) || !isDigitTwoToNine(id.charAt(1))) return ValidationFailure.ID_PREFIX;
+
+        if (!isCapitalLetter(id.charAt(8)) || !isCapitalLetter(id.charAt(9))) return ValidationFailure.ID_SUFFIX;
+
+        int specialCount = 0;
+        for (int i = 2; i < 8; i++) {
+            if (!Character.isLetterOrDigit(id.charAt(i))) {
+                specialCount++;
+            }
+        }
+        return (specialCount >= 2) ? null : ValidationFailure.ID_SPECIAL_CHARACTERS;
+    }
+
+    // Same as matching \d+\|[^|]+\|[^|]+\|Victoria\|[^|]+ : five parts separated by '|', the
+    // first one digits only, the fourth one exactly "Victoria" and none of them empty
+    public static ValidationFailure checkAddress(String address) {
+        if (address == null) return ValidationFailure.ADDRESS_FORMAT;
+
+        int length = address.length();
+        int partStart = 0;
+        int part = 0;
+        boolean victoria = false;
+        for (int i = 0; i <= length; i++) {
+            if (i < length && address.charAt(i) != '|') {
+                if (part == 0 && !isAsciiDigit(address.charAt(i))) return ValidationFailure.ADDRESS_FORMAT;
+                continue;
+            }
+
+            // end of a part
+            if (i == partStart || part > 4) return ValidationFailure.ADDRESS_FORMAT;
+            if (part == 3) {
+                victoria = address.startsWith("Victoria", partStart) && i - partStart == 8;
+            }
+            part++;
+            partStart = i + 1;
+        }
+        if (part != 5) return ValidationFailure.ADDRESS_FORMAT;
+        return victoria ? null : ValidationFailure.ADDRESS_STATE;
+    }
+
+    // Same as matching \d{2}-\d{2}-\d{4}
+    public static ValidationFailure checkDate(String date) {
+        if (date == null || date.length() != 10) return ValidationFailure.DATE_FORMAT;
+        for (int i = 0; i < 10; i++) {
+            char c = date.charAt(i);
+            boolean valid = (i == 2 || i == 5) ? c == '-' : isAsciiDigit(c);
+            if (!valid) return ValidationFailure.DATE_FORMAT;
+        }
+        return null;
+    }
+
+    public static boolean isValidID(String id) {
+        return checkID(id) == null;
+    }
+
+    public static boolean isValidAddress(String address) {
+        return checkAddress(address) == null;
+    }
+
+    public static boolean isValidDate(String date) {
+        return checkDate(date) == null;
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isDigitTwoToNine(char c) {
+        return c >= '2' && c <= '9';
+    }
+
+    private static boolean isCapitalLetter(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+}
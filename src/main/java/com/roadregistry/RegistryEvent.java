@@ -0,0 +1,17 @@
+package com.roadregistry;
+
+// One change to the registry, as published by RegistryEvents. The record is the row of the person
+// after the change; previousPersonID is only set when an update changed the ID, and detail holds
+// the offences of a DEMERITS_ADDED event in the "dd-MM-yyyy:points;..." format.
+public record RegistryEvent(long sequence, Type type, long timestamp, String personID, String previousPersonID,
+                            String detail, String record) {
+
+    public enum Type {
+        PERSON_ADDED,
+        PERSON_UPDATED,
+        DEMERITS_ADDED,
+        // the suspension status changed, through new offences or because old ones expired
+        SUSPENDED,
+        REINSTATED
+    }
+}
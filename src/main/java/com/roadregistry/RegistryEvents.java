@@ -0,0 +1,418 @@
+package com.roadregistry;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Stream of the changes made to a registry, so other systems can follow it instead of reading and
+// diffing the whole registry file. Every successful addPerson, updatePersonalDetails and
+// addDemeritPoints, every row added by BulkImporter, and every change of the suspension status,
+// publishes a RegistryEvent with the next sequence number. Events are published while the person
+// is still locked, so the order of the events of one person is the order of the changes.
+//
+// Events are appended to a log next to the registry ("persons.txt.events") before they are handed
+// to anyone, so a consumer can stop and later resume from the sequence number after the last event
+// it saw. Every 1024th event is remembered with its position in the log, so resuming seeks close to
+// the requested event instead of reading the log from the start.
+//
+// The change itself is already stored when its event is published, so an event that cannot be
+// written does not fail the change. It is counted in RegistryMetrics, kept in memory and written
+// before the next event, so the log keeps the order of the changes and has no gaps.
+//
+// Once the log is larger than the segment size it is renamed to "persons.txt.events-<first
+// sequence>" and a new log is started. Only the newest segments are kept (16 of 64 MB by default,
+// see setRetention), older ones are deleted; a consumer asking for events that are gone gets the
+// oldest ones that are left and sees the jump in the sequence numbers.
+//
+// In-process subscribers get the events on their own virtual thread through a bounded queue. A
+// writer never waits for a subscriber: when the queue of a slow subscriber is full the event is not
+// queued, and the subscriber reads the events it missed back from the log once it has caught up.
+//
+// Log layout, one line per event:
+//   "E,checksum,sequence,type,timestamp,personID,previousPersonID,detail,record"
+public class RegistryEvents {
+    private static final Map<String, RegistryEvents> OPEN = new HashMap<>();
+    private static final int INDEX_INTERVAL = 1024;
+    // events read from the log at a time by a subscriber that is catching up
+    private static final int CATCH_UP_BATCH = 1024;
+    private static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    private static final int DEFAULT_RETAINED_SEGMENTS = 16;
+
+    private final File logFile;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    // the fields below are guarded by this
+    private boolean loaded = false;
+    private OutputStream out;
+    private long logLength = 0;
+    // true after a failed write, the log may end with part of an event
+    private boolean torn = false;
+    // sequence number of the first event in the log, 0 while it is empty
+    private long logFirst = 0;
+    // segments the log was rotated into, by the sequence number of their first event
+    private final TreeMap<Long, File> segments = new TreeMap<>();
+    private long segmentBytes = DEFAULT_SEGMENT_BYTES;
+    private int retainedSegments = DEFAULT_RETAINED_SEGMENTS;
+    // sequence number of every 1024th event and the position of its line in its segment or the log
+    private final TreeMap<Long, Long> positions = new TreeMap<>();
+    // events that could not be written yet, in the order they were published
+    private final ArrayDeque<RegistryEvent> unwritten = new ArrayDeque<>();
+    // written under the lock, read by subscribers without it
+    private volatile long lastSequence = 0;
+
+    private RegistryEvents(File logFile) {
+        this.logFile = logFile;
+    }
+
+    // Returns the shared event stream of the given registry file
+    public static RegistryEvents forFile(String path) {
+        File file = new File(path + ".events").getAbsoluteFile();
+        synchronized (OPEN) {
+            return OPEN.computeIfAbsent(file.getPath(), key -> new RegistryEvents(file));
+        }
+    }
+
+    // Drops the shared stream for the path and ends its subscriptions, as if the program had
+    // stopped. Only used by tests to check what is recovered from the log.
+    static void evict(String path) throws IOException {
+        RegistryEvents events;
+        synchronized (OPEN) {
+            events = OPEN.remove(new File(path + ".events").getAbsoluteFile().getPath());
+        }
+        if (events == null) return;
+        for (Subscription subscription : events.subscriptions) {
+            subscription.close();
+        }
+        synchronized (events) {
+            if (events.out != null) events.out.close();
+        }
+    }
+
+    // Starts a new segment once the log has grown to segmentBytes and keeps the newest
+    // retainedSegments segments besides the log
+    public synchronized void setRetention(long segmentBytes, int retainedSegments) {
+        if (segmentBytes < 1 || retainedSegments < 0) {
+            throw new IllegalArgumentException("Invalid retention: " + segmentBytes + " bytes, " + retainedSegments + " segments");
+        }
+        this.segmentBytes = segmentBytes;
+        this.retainedSegments = retainedSegments;
+    }
+
+    // Sequence number of the last event in the log, 0 if there is none
+    public synchronized long lastSequence() throws IOException {
+        load();
+        return lastSequence;
+    }
+
+    // Sequence number of the oldest event that is still kept
+    public synchronized long firstSequence() throws IOException {
+        load();
+        return firstKept();
+    }
+
+    // Returns up to max events starting at the given sequence number, in order. Used by consumers
+    // that poll: they pass the sequence after the last event they handled. Events that are no
+    // longer kept are skipped.
+    public List<RegistryEvent> read(long fromSequence, int max) throws IOException {
+        long last = lastSequence();
+        if (max <= 0 || fromSequence > last) return List.of();
+        long first = Math.max(1, fromSequence);
+        return readLog(first, Math.min(last, first + max - 1));
+    }
+
+    // Delivers the events from the given sequence number on to the consumer, first the ones already
+    // in the log and then new ones as they are published. Up to capacity events wait for the
+    // consumer in memory. An exception thrown by the consumer ends the subscription.
+    public synchronized Subscription subscribe(long fromSequence, int capacity, Consumer<RegistryEvent> consumer) throws IOException {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        load();
+        Subscription subscription = new Subscription(Math.max(1, fromSequence), capacity, consumer);
+        subscriptions.add(subscription);
+        subscription.thread = Thread.ofVirtual().name("registry-events-subscriber").start(subscription::run);
+        return subscription;
+    }
+
+    // Publishes an event for a change that is already stored. Events that cannot be written are
+    // kept and written before the next one, see the class comment.
+    synchronized void publish(RegistryEvent.Type type, String personID, String previousPersonID, String detail,
+                              String record) {
+        // the sequence number is given when the event is written
+        unwritten.add(new RegistryEvent(0, type, System.currentTimeMillis(), personID, previousPersonID,
+                (detail == null) ? "" : detail, record));
+        try {
+            load();
+            while (!unwritten.isEmpty()) {
+                RegistryEvent event = unwritten.peek();
+                write(new RegistryEvent(lastSequence + 1, event.type(), event.timestamp(), event.personID(),
+                        event.previousPersonID(), event.detail(), event.record()));
+                unwritten.poll();
+            }
+        } catch (IOException e) {
+            RegistryMetrics.eventWriteFailed();
+        }
+    }
+
+    // Appends an event to the log and hands it to the subscribers
+    private void write(RegistryEvent event) throws IOException {
+        if (torn) {
+            // cut off what a failed write left behind, so the log stays readable after it
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+            try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(logLength);
+            }
+            torn = false;
+        }
+        if (logLength >= segmentBytes) {
+            rotate();
+        }
+
+        byte[] line = (format(event) + "\n").getBytes(StandardCharsets.UTF_8);
+        try {
+            if (out == null) {
+                out = new BufferedOutputStream(new FileOutputStream(logFile, true));
+            }
+            out.write(line);
+            out.flush();
+        } catch (IOException e) {
+            torn = true;
+            throw e;
+        }
+        if (logLength == 0) logFirst = event.sequence();
+        if (event.sequence() % INDEX_INTERVAL == 1) positions.put(event.sequence(), logLength);
+        logLength += line.length;
+        RegistryMetrics.bytesWritten(line.length);
+        lastSequence = event.sequence();
+
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    // Turns the log into a segment, starts an empty log and deletes the segments beyond the
+    // retention
+    private void rotate() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        File segment = new File(logFile.getPath() + "-" + logFirst);
+        PersonRepository.moveIntoPlace(logFile.toPath(), segment.toPath());
+        segments.put(logFirst, segment);
+        logFirst = 0;
+        logLength = 0;
+
+        while (segments.size() > retainedSegments) {
+            Map.Entry<Long, File> oldest = segments.pollFirstEntry();
+            Files.deleteIfExists(oldest.getValue().toPath());
+            positions.headMap(firstKept()).clear();
+        }
+    }
+
+    // Sequence number of the oldest event that is still kept
+    private long firstKept() {
+        if (!segments.isEmpty()) return segments.firstKey();
+        return (logFirst == 0) ? lastSequence + 1 : logFirst;
+    }
+
+    // Finds the segments and reads the log once to find the last event and the positions to seek
+    // to. A torn event at the end of the log is cut off.
+    private void load() throws IOException {
+        if (loaded) return;
+
+        File[] files = logFile.getAbsoluteFile().getParentFile().listFiles();
+        String prefix = logFile.getName() + "-";
+        for (File file : (files == null) ? new File[0] : files) {
+            String name = file.getName();
+            if (!name.startsWith(prefix)) continue;
+            try {
+                segments.put(Long.parseLong(name.substring(prefix.length())), file);
+            } catch (NumberFormatException e) {
+                // not a segment of this log
+            }
+        }
+        if (!segments.isEmpty()) {
+            // the last event of the newest segment, in case the log has none
+            scan(segments.lastEntry().getValue());
+        }
+
+        if (logFile.exists()) {
+            long position = scan(logFile);
+            if (position < logFile.length()) {
+                try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(position);
+                }
+            }
+            logLength = position;
+        }
+        loaded = true;
+    }
+
+    // Reads the events of a segment or the log to index them, returns the length of the intact part
+    private long scan(File file) throws IOException {
+        long position = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                RegistryEvent event = parse(line);
+                if (event == null) break;
+                if (file.equals(logFile) && position == 0) logFirst = event.sequence();
+                if (event.sequence() % INDEX_INTERVAL == 1) positions.put(event.sequence(), position);
+                position += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                lastSequence = event.sequence();
+            }
+        }
+        return position;
+    }
+
+    // Events with sequence numbers from the first to the last one that are still kept. The files
+    // are opened under the lock and read without it; a rotation or retention that renames or
+    // deletes one of them meanwhile does not affect a file that is already open.
+    private List<RegistryEvent> readLog(long first, long last) throws IOException {
+        long from;
+        long start;
+        List<FileChannel> channels = new ArrayList<>();
+        try {
+            synchronized (this) {
+                from = Math.max(first, firstKept());
+                TreeMap<Long, File> files = new TreeMap<>(segments);
+                if (logFirst != 0) files.put(logFirst, logFile);
+                Long segment = files.floorKey(from);
+                if (from > last || segment == null) return new ArrayList<>();
+                Map.Entry<Long, Long> floor = positions.floorEntry(from);
+                start = (floor == null || floor.getKey() < segment) ? 0 : floor.getValue();
+                for (File file : files.tailMap(segment).values()) {
+                    channels.add(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+                }
+            }
+            List<RegistryEvent> events = new ArrayList<>((int) Math.min(last - from + 1, CATCH_UP_BATCH));
+            for (FileChannel channel : channels) {
+                if (readFile(channel.position(start), from, last, events)) break;
+                start = 0;
+            }
+            return events;
+        } finally {
+            for (FileChannel channel : channels) {
+                channel.close();
+            }
+        }
+    }
+
+    // Adds the events of one file from its position on, returns true once the last one is read
+    private static boolean readFile(FileChannel channel, long first, long last, List<RegistryEvent> events) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            RegistryEvent event = parse(line);
+            if (event == null || event.sequence() > last) return true;
+            if (event.sequence() >= first) events.add(event);
+            if (event.sequence() == last) return true;
+        }
+        return false;
+    }
+
+    private static String format(RegistryEvent event) {
+        String payload = event.sequence() + "," + event.type() + "," + event.timestamp() + "," + event.personID() + ","
+                + ((event.previousPersonID() == null) ? "" : event.previousPersonID()) + "," + event.detail() + "," + event.record();
+        return "E," + checksum(payload) + "," + payload;
+    }
+
+    // Reads one line of the log, returns null if it is damaged
+    private static RegistryEvent parse(String line) {
+        String[] parts = line.split(",", 3);
+        if (parts.length < 3 || !parts[0].equals("E") || !checksum(parts[2]).equals(parts[1])) return null;
+        String[] fields = parts[2].split(",", 7);
+        if (fields.length < 7) return null;
+        return new RegistryEvent(Long.parseLong(fields[0]), RegistryEvent.Type.valueOf(fields[1]), Long.parseLong(fields[2]),
+                fields[3], fields[4].isEmpty() ? null : fields[4], fields[5], fields[6]);
+    }
+
+    private static String checksum(String payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    // A consumer receiving events on its own thread. Closing it stops the delivery; position()
+    // is the sequence number to resume from later.
+    public final class Subscription implements Closeable {
+        private final BlockingQueue<RegistryEvent> queue;
+        private final Consumer<RegistryEvent> consumer;
+        private volatile long next;
+        private volatile boolean closed = false;
+        private Thread thread;
+
+        private Subscription(long next, int capacity, Consumer<RegistryEvent> consumer) {
+            this.next = next;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.consumer = consumer;
+        }
+
+        // Sequence number of the next event the consumer will get
+        public long position() {
+            return next;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            subscriptions.remove(this);
+            if (thread != null) thread.interrupt();
+        }
+
+        // Called by the writer, never waits: a full queue means the event is read from the log later
+        private void offer(RegistryEvent event) {
+            queue.offer(event);
+        }
+
+        private void run() {
+            try {
+                while (!closed) {
+                    RegistryEvent head = queue.peek();
+                    long last = lastSequence;
+                    if (next <= last && (head == null || head.sequence() > next)) {
+                        // events between the next one and the first queued one are only in the log
+                        long upTo = (head == null) ? last : head.sequence() - 1;
+                        List<RegistryEvent> missed = readLog(next, Math.min(upTo, next + CATCH_UP_BATCH - 1));
+                        if (missed.isEmpty()) {
+                            // the events up to the queued one are no longer kept
+                            if (head == null) throw new IOException("Events from " + next + " are missing in " + logFile);
+                            next = head.sequence();
+                        }
+                        for (RegistryEvent event : missed) {
+                            deliver(event);
+                        }
+                        continue;
+                    }
+                    // a full queue is never empty, so an event that was not queued is noticed
+                    // above before the thread waits here
+                    RegistryEvent event = queue.take();
+                    if (event.sequence() >= next) deliver(event);
+                }
+            } catch (InterruptedException e) {
+                // closed
+            } catch (IOException | RuntimeException e) {
+                // the log could not be read or the consumer failed, resume from position()
+                close();
+            }
+        }
+
+        private void deliver(RegistryEvent event) {
+            if (closed) return;
+            consumer.accept(event);
+            next = event.sequence() + 1;
+        }
+    }
+}
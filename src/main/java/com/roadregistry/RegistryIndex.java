@@ -0,0 +1,248 @@
+package com.roadregistry;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.util.*;
+
+// Secondary indexes over a registry for the lists operations keep asking for, such as all suspended
+// drivers in a city, people under 21 with more than 4 recent points or everyone born in a given
+// year. Each index maps a value to the set of rows that have it, and a query intersects the sets
+// of its conditions instead of reading the whole registry.
+//
+// The indexes follow the rows through a PersonRepository.Listener, so every addPerson,
+// updatePersonalDetails and addDemeritPoints is reflected straight away. Recent points go down as
+// offences age out, so the points index keeps the total a row had when it was last changed; it is
+// only used to narrow the candidates, which are then checked against their current total.
+//
+// The address layout is "number|street|city|state|country" and has no postcode, so people are
+// indexed by city only.
+public class RegistryIndex {
+    private static final Map<String, RegistryIndex> OPEN = new HashMap<>();
+
+    private final PersonRepository repository;
+
+    // rows that hold a record, removed rows are left out
+    private final BitSet present = new BitSet();
+    private final BitSet suspended = new BitSet();
+    private final Map<String, BitSet> byCity = new HashMap<>();
+    private final TreeMap<Integer, BitSet> byBirthYear = new TreeMap<>();
+    private final TreeMap<Integer, BitSet> byRecentPoints = new TreeMap<>();
+    // per row: the recent points it is filed under in byRecentPoints, 0 if it is not filed
+    private int[] indexedPoints = new int[1024];
+
+    private RegistryIndex(PersonRepository repository) {
+        this.repository = repository;
+    }
+
+    // Returns the shared index for the given registry file, reading the registry once to build it
+    public static RegistryIndex forFile(String path) throws IOException {
+        String key = new File(path).getAbsoluteFile().getPath();
+        synchronized (OPEN) {
+            RegistryIndex index = OPEN.get(key);
+            if (index == null) {
+                index = new RegistryIndex(PersonRepository.forFile(path));
+                index.attach();
+                OPEN.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    // Starts a new query, with no conditions it matches every person
+    public Query query() {
+        return new Query();
+    }
+
+    // Conditions of a query, all of them have to hold
+    public final class Query {
+        private Boolean suspendedStatus;
+        private String city;
+        private int fromYear = Integer.MIN_VALUE;
+        private int toYear = Integer.MAX_VALUE;
+        private int minRecentPoints = Integer.MIN_VALUE;
+
+        private Query() {
+        }
+
+        public Query suspended(boolean value) {
+            suspendedStatus = value;
+            return this;
+        }
+
+        // City part of the address, ignoring case
+        public Query city(String value) {
+            city = cityKey(value);
+            return this;
+        }
+
+        public Query bornIn(int year) {
+            return bornBetween(year, year);
+        }
+
+        public Query bornBetween(int firstYear, int lastYear) {
+            fromYear = Math.max(fromYear, firstYear);
+            toYear = Math.min(toYear, lastYear);
+            return this;
+        }
+
+        // Age as counted by Person.getAge, both ends included
+        public Query ageBetween(int minAge, int maxAge) {
+            int year = LocalDate.now().getYear();
+            return bornBetween(year - maxAge, year - minAge);
+        }
+
+        // At least the given number of points in the last two years
+        public Query minRecentPoints(int points) {
+            minRecentPoints = Math.max(minRecentPoints, points);
+            return this;
+        }
+
+        // Matching records, in file order
+        public List<PersonRecord> list() throws IOException {
+            synchronized (repository) {
+                BitSet rows = matchingRows();
+                List<PersonRecord> result = new ArrayList<>(rows.cardinality());
+                rows.stream().forEach(row -> result.add(repository.get(row)));
+                return result;
+            }
+        }
+
+        public int count() throws IOException {
+            synchronized (repository) {
+                return matchingRows().cardinality();
+            }
+        }
+
+        private BitSet matchingRows() throws IOException {
+            // picks up changes made to the file outside of the repository
+            repository.size();
+
+            BitSet rows = (BitSet) present.clone();
+            if (suspendedStatus != null) {
+                if (suspendedStatus) {
+                    rows.and(suspended);
+                } else {
+                    rows.andNot(suspended);
+                }
+            }
+            if (city != null) {
+                rows.and(byCity.getOrDefault(city, new BitSet()));
+            }
+            if (fromYear != Integer.MIN_VALUE || toYear != Integer.MAX_VALUE) {
+                rows.and(union(fromYear > toYear ? Map.of() : byBirthYear.subMap(fromYear, true, toYear, true)));
+            }
+            if (minRecentPoints > 0) {
+                rows.and(union(byRecentPoints.tailMap(minRecentPoints, true)));
+                // the indexed totals can only be too high, check the candidates that are left
+                LocalDate today = LocalDate.now();
+                for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                    if (recentPoints(repository.get(row), today) < minRecentPoints) {
+                        rows.clear(row);
+                    }
+                }
+            }
+            return rows;
+        }
+    }
+
+    private void attach() throws IOException {
+        synchronized (repository) {
+            int size = repository.size();
+            repository.addListener(new PersonRepository.Listener() {
+                @Override
+                public void rowChanged(int row, PersonRecord previous, PersonRecord current) {
+                    if (previous != null) remove(row, previous);
+                    if (current != null) add(row, current);
+                }
+
+                @Override
+                public void reloaded() {
+                    clear();
+                }
+            });
+            for (int row = 0; row < size; row++) {
+                PersonRecord record = repository.get(row);
+                if (record != null) add(row, record);
+            }
+        }
+    }
+
+    private void add(int row, PersonRecord record) {
+        present.set(row);
+        if (record.isSuspended()) suspended.set(row);
+
+        String city = cityOf(record);
+        if (city != null) byCity.computeIfAbsent(city, key -> new BitSet()).set(row);
+
+        int year = birthYearOf(record);
+        if (year > 0) byBirthYear.computeIfAbsent(year, key -> new BitSet()).set(row);
+
+        if (row >= indexedPoints.length) {
+            indexedPoints = Arrays.copyOf(indexedPoints, Math.max(row + 1, indexedPoints.length * 2));
+        }
+        int points = recentPoints(record, LocalDate.now());
+        indexedPoints[row] = points;
+        if (points > 0) byRecentPoints.computeIfAbsent(points, key -> new BitSet()).set(row);
+    }
+
+    private void remove(int row, PersonRecord record) {
+        present.clear(row);
+        suspended.clear(row);
+        clearRow(byCity, cityOf(record), row);
+        clearRow(byBirthYear, birthYearOf(record), row);
+        clearRow(byRecentPoints, indexedPoints[row], row);
+        indexedPoints[row] = 0;
+    }
+
+    private void clear() {
+        present.clear();
+        suspended.clear();
+        byCity.clear();
+        byBirthYear.clear();
+        byRecentPoints.clear();
+        Arrays.fill(indexedPoints, 0);
+    }
+
+    private static <K> void clearRow(Map<K, BitSet> index, K key, int row) {
+        if (key == null) return;
+        BitSet rows = index.get(key);
+        if (rows == null) return;
+        rows.clear(row);
+        if (rows.isEmpty()) index.remove(key);
+    }
+
+    private static BitSet union(Map<Integer, BitSet> sets) {
+        BitSet result = new BitSet();
+        for (BitSet rows : sets.values()) {
+            result.or(rows);
+        }
+        return result;
+    }
+
+    // City part of the address, null if the address does not have one
+    private static String cityOf(PersonRecord record) {
+        if (record.fieldCount() < 4) return null;
+        String[] parts = record.getAddress().split("\\|");
+        return (parts.length >= 3 && !parts[2].isBlank()) ? cityKey(parts[2]) : null;
+    }
+
+    private static String cityKey(String city) {
+        return city.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Year of a dd-MM-yyyy birthday, 0 if it cannot be read
+    private static int birthYearOf(PersonRecord record) {
+        if (record.fieldCount() < 5) return 0;
+        String birthday = record.getBirthday();
+        if (!PersonValidator.isValidDate(birthday)) return 0;
+        return Integer.parseInt(birthday.substring(6));
+    }
+
+    private static int recentPoints(PersonRecord record, LocalDate today) {
+        try {
+            return DemeritHistory.parse(record.getDemerits()).recentPoints(today);
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+}
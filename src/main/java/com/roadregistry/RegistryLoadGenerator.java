@@ -0,0 +1,219 @@
+package com.roadregistry;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Drives a RegistryServer with a mixed workload and reports the sustained requests per second and
+// the latency percentiles. Each connection first adds its own people and then sends lookups,
+// address updates and demerits for them, keeping up to pipelineDepth requests in flight; the
+// server answers the requests of a connection in order, so the adds are done before the rest.
+// The latency of a request is measured from sending it to reading its response. Every run uses
+// people of its own, so a warm-up does not turn the adds of the measured run into duplicates.
+public class RegistryLoadGenerator {
+    private static final String BASE36 = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    private final String host;
+    private final int port;
+    // first connection number of the next run, connection numbers pick the personIDs
+    private int nextConnection = 0;
+
+    // Responses of one connection: the ones that were not OK or never came, and the number that
+    // came, whose latencies are the first entries of the latency array
+    private record Outcome(long failed, int answered) {
+    }
+
+    // Outcome of a run
+    public record Report(long requests, long failed, long elapsedNanos, long p50Nanos, long p99Nanos, long maxNanos) {
+
+        public double requestsPerSecond() {
+            return (elapsedNanos == 0) ? 0 : requests * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests (%d failed) in %.1f ms: %.0f requests/s, p50 %.1f us, p99 %.1f us, max %.1f us",
+                    requests, failed, elapsedNanos / 1_000_000.0, requestsPerSecond(),
+                    p50Nanos / 1000.0, p99Nanos / 1000.0, maxNanos / 1000.0);
+        }
+    }
+
+    public RegistryLoadGenerator(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    // Runs the workload on the given number of connections, each sending requestsPerConnection
+    // requests, and waits for all responses
+    public Report run(int connections, int requestsPerConnection, int pipelineDepth) throws IOException, InterruptedException {
+        int firstConnection = nextConnection;
+        nextConnection += connections;
+        long[][] latencies = new long[connections][];
+        Outcome[] outcomes = new Outcome[connections];
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> running = new ArrayList<>();
+            for (int c = 0; c < connections; c++) {
+                int connection = c;
+                running.add(clients.submit(() -> {
+                    latencies[connection] = new long[requestsPerConnection];
+                    outcomes[connection] = runConnection(firstConnection + connection, requestsPerConnection, pipelineDepth,
+                            latencies[connection]);
+                    return null;
+                }));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Load generator connection failed", e.getCause());
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // requests that never got a response are failed and have no latency
+        int answered = 0;
+        for (Outcome outcome : outcomes) {
+            answered += outcome.answered();
+        }
+        long[] all = new long[answered];
+        long failed = 0;
+        int filled = 0;
+        for (int c = 0; c < connections; c++) {
+            System.arraycopy(latencies[c], 0, all, filled, outcomes[c].answered());
+            filled += outcomes[c].answered();
+            failed += outcomes[c].failed();
+        }
+        Arrays.sort(all);
+        return new Report((long) connections * requestsPerConnection, failed, elapsed,
+                percentile(all, 0.50), percentile(all, 0.99), (all.length == 0) ? 0 : all[all.length - 1]);
+    }
+
+    // Sends the requests of one connection and reads their responses
+    private Outcome runConnection(int connection, int count, int pipelineDepth, long[] latencies) throws IOException, InterruptedException {
+        // people this connection adds and then works with
+        int people = Math.max(1, count / 10);
+        Semaphore inFlight = new Semaphore(pipelineDepth);
+        long[] sentAt = new long[count];
+
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+
+            // responses come back in request order, read them while requests are still being sent
+            long[] failed = new long[1];
+            int[] answered = new int[1];
+            Thread responses = Thread.ofVirtual().start(() -> {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        String response = reader.readLine();
+                        if (response == null) break;
+                        latencies[i] = System.nanoTime() - sentAt[i];
+                        if (!response.startsWith("OK")) failed[0]++;
+                        answered[0]++;
+                        inFlight.release();
+                    }
+                } catch (IOException e) {
+                    // the connection was closed
+                } finally {
+                    if (answered[0] < count) {
+                        // stop the sender, also when it waits for room in the pipeline
+                        closeQuietly(socket);
+                        inFlight.release(count);
+                    }
+                }
+            });
+
+            try {
+                Random random = new Random(connection);
+                for (int i = 0; i < count && !socket.isClosed(); i++) {
+                    if (!inFlight.tryAcquire()) {
+                        // the pipeline is full, send what is buffered and wait for a response
+                        writer.flush();
+                        inFlight.acquire();
+                    }
+                    sentAt[i] = System.nanoTime();
+                    writer.write(request(connection, i, people, random));
+                    writer.newLine();
+                }
+                writer.flush();
+            } catch (IOException e) {
+                // the server closed the connection, the requests without a response count as failed
+            }
+            responses.join();
+            return new Outcome(failed[0] + count - answered[0], answered[0]);
+        }
+    }
+
+    // The i-th request of a connection: the first requests add its people, after that mostly
+    // lookups with some updates and demerits
+    private static String request(int connection, int i, int people, Random random) {
+        if (i < people) {
+            return String.join("\t", "ADD", personID(connection, i), "Tom", "Smith",
+                    (1 + i % 300) + "|King St|Melbourne|Victoria|Australia", "15-03-1985");
+        }
+        String id = personID(connection, random.nextInt(people));
+        int kind = random.nextInt(10);
+        if (kind == 0) {
+            return String.join("\t", "UPDATE", id, id, "Tom", "Smith",
+                    (1 + random.nextInt(300)) + "|King St|Melbourne|Victoria|Australia", "15-03-1985");
+        }
+        if (kind == 1) {
+            return String.join("\t", "DEMERIT", id, String.valueOf(1 + random.nextInt(3)),
+                    String.format("%02d-%02d-2025", 1 + random.nextInt(28), 1 + random.nextInt(12)));
+        }
+        return "GET\t" + id;
+    }
+
+    // Valid ID that is unique per connection and person: two odd digits so the ID may be changed,
+    // four letters or digits, two special characters and two capital letters
+    static String personID(int connection, int n) {
+        char[] id = new char[10];
+        id[0] = (char) ('3' + 2 * (connection % 4));
+        id[1] = (char) ('3' + 2 * ((connection / 4) % 4));
+        int rest = n;
+        for (int i = 2; i < 6; i++) {
+            id[i] = BASE36.charAt(rest % 36);
+            rest /= 36;
+        }
+        id[6] = '$';
+        id[7] = '#';
+        int group = connection / 16;
+        id[8] = (char) ('A' + group % 26);
+        id[9] = (char) ('A' + (group / 26) % 26);
+        return new String(id);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(sorted.length * fraction) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    // Usage: RegistryLoadGenerator <port> [connections] [requests per connection] [pipeline depth]
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1 || args.length > 4) {
+            System.out.println("Usage: RegistryLoadGenerator <port> [connections] [requests per connection] [pipeline depth]");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        int connections = (args.length > 1) ? Integer.parseInt(args[1]) : 16;
+        int requests = (args.length > 2) ? Integer.parseInt(args[2]) : 10_000;
+        int depth = (args.length > 3) ? Integer.parseInt(args[3]) : 32;
+
+        RegistryLoadGenerator generator = new RegistryLoadGenerator("localhost", port);
+        // a short warm-up so the JIT has compiled the hot paths before measuring
+        generator.run(connections, Math.min(requests, 1_000), depth);
+        System.out.println(generator.run(connections, requests, depth));
+    }
+}
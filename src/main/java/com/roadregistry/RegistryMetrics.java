@@ -0,0 +1,435 @@
+package com.roadregistry;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.*;
+
+// Counters and latency histograms for the registry operations: how long addPerson,
+// updatePersonalDetails and addDemeritPoints take, how many records they look at, how often and
+// why they fail, and how many bytes the registry reads and writes. The numbers are published as
+// JMX MBeans under "com.roadregistry" and can be dumped as text to a file at a fixed interval.
+//
+// Metrics are off unless the program is started with -Droadregistry.metrics=true or enable() is
+// called. While they are off every recording method returns after reading one volatile flag and
+// operations do not even read the clock, so instrumented code costs next to nothing.
+//
+// Latencies go into power-of-two buckets of nanoseconds, so percentiles are upper bounds that are
+// at most twice the real value. Byte counts of text files are counted in characters, which is the
+// same for the ASCII registry files.
+public final class RegistryMetrics {
+
+    // The instrumented operations of Person
+    public enum Operation {
+        ADD_PERSON("addPerson"),
+        UPDATE_PERSONAL_DETAILS("updatePersonalDetails"),
+        ADD_DEMERIT_POINTS("addDemeritPoints");
+
+        private final String displayName;
+
+        Operation(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String displayName() {
+            return displayName;
+        }
+    }
+
+    // Why updatePersonalDetails left a matching record unchanged
+    public enum UpdateSkip {
+        // the ID starts with an even digit and cannot be changed
+        EVEN_ID_CHANGE,
+        // people under 18 cannot change their address
+        UNDER_18_ADDRESS_CHANGE,
+        // the birthday can only be changed on its own
+        BIRTHDAY_WITH_OTHER_CHANGES,
+        // the new ID, address or birthday is not valid
+        INVALID_DETAILS
+    }
+
+    // Published for each operation as com.roadregistry:type=Operation,name=<operation>
+    public interface OperationMXBean {
+        long getCount();
+
+        long getFailures();
+
+        long getErrors();
+
+        long getRecordsScanned();
+
+        double getMeanMicros();
+
+        double getP50Micros();
+
+        double getP99Micros();
+
+        double getMaxMicros();
+    }
+
+    // Published as com.roadregistry:type=Registry
+    public interface RegistryMXBean {
+        long getBytesRead();
+
+        long getBytesWritten();
+
+        long getRowsRead();
+
+        Map<String, Long> getValidationFailures();
+
+        Map<String, Long> getSkippedUpdates();
+
+        long getEventWriteFailures();
+
+        long getLedgerWriteFailures();
+
+        String getDump();
+    }
+
+    private static final int BUCKETS = 64;
+
+    private static volatile boolean enabled = false;
+    private static boolean registered = false;
+    private static ScheduledExecutorService dumper;
+    // told after every periodic dump, only used by tests
+    private static volatile Runnable dumpListener;
+
+    private static final OperationStats[] OPERATIONS = new OperationStats[Operation.values().length];
+    private static final LongAdder BYTES_READ = new LongAdder();
+    private static final LongAdder BYTES_WRITTEN = new LongAdder();
+    private static final LongAdder ROWS_READ = new LongAdder();
+    private static final LongAdder EVENT_WRITE_FAILURES = new LongAdder();
+    private static final LongAdder LEDGER_WRITE_FAILURES = new LongAdder();
+    private static final LongAdder[] VALIDATION_FAILURES = adders(ValidationFailure.values().length);
+    private static final LongAdder[] UPDATE_SKIPS = adders(UpdateSkip.values().length);
+
+    static {
+        for (Operation operation : Operation.values()) {
+            OPERATIONS[operation.ordinal()] = new OperationStats();
+        }
+        if (Boolean.getBoolean("roadregistry.metrics")) {
+            enable();
+        }
+    }
+
+    private RegistryMetrics() {
+    }
+
+    // Turns recording on and registers the MBeans
+    public static synchronized void enable() {
+        enabled = true;
+        registerMBeans();
+    }
+
+    // Turns recording off, the numbers collected so far are kept
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Start time of an operation, 0 if metrics are off
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    // Records the outcome of an operation started with start()
+    public static void finish(Operation operation, long start, boolean success) {
+        if (start == 0 || !enabled) return;
+        OPERATIONS[operation.ordinal()].record(System.nanoTime() - start, success);
+    }
+
+    // An operation failed because the registry could not be read or written
+    public static void error(Operation operation) {
+        if (enabled) OPERATIONS[operation.ordinal()].errors.increment();
+    }
+
+    // Records looked at by an operation
+    public static void scanned(Operation operation, int records) {
+        if (enabled) OPERATIONS[operation.ordinal()].scanned.add(records);
+    }
+
+    public static void validationFailed(ValidationFailure failure) {
+        if (enabled) VALIDATION_FAILURES[failure.ordinal()].increment();
+    }
+
+    public static void updateSkipped(UpdateSkip reason) {
+        if (enabled) UPDATE_SKIPS[reason.ordinal()].increment();
+    }
+
+    // Rows read from a registry file by a load or a streaming rewrite
+    public static void rowsRead(long rows) {
+        if (enabled) ROWS_READ.add(rows);
+    }
+
+    public static void bytesRead(long bytes) {
+        if (enabled) BYTES_READ.add(bytes);
+    }
+
+    public static void bytesWritten(long bytes) {
+        if (enabled) BYTES_WRITTEN.add(bytes);
+    }
+
+    // A change event could not be written to the event log and is kept to be written later.
+    // Counted even while metrics are off, a failing event log should never go unnoticed.
+    public static void eventWriteFailed() {
+        EVENT_WRITE_FAILURES.increment();
+    }
+
+    // An offence of a stored change could not be written to the demerit ledger and is kept to be
+    // written later. Counted even while metrics are off, like eventWriteFailed().
+    public static void ledgerWriteFailed() {
+        LEDGER_WRITE_FAILURES.increment();
+    }
+
+    // Statistics of one operation
+    public static OperationMXBean operation(Operation operation) {
+        return OPERATIONS[operation.ordinal()];
+    }
+
+    // Totals that are not tied to one operation
+    public static RegistryMXBean registry() {
+        return REGISTRY;
+    }
+
+    // Appends a text dump of all metrics to the given file every intervalSeconds
+    public static synchronized void startDump(Path file, long intervalSeconds) {
+        stopDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "registry-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> {
+            try {
+                Files.writeString(file, dump() + System.lineSeparator(), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                Runnable listener = dumpListener;
+                if (listener != null) listener.run();
+            } catch (IOException e) {
+                // try again with the next dump
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // Runs the listener after every periodic dump has been written, null removes it. Lets tests
+    // wait for a dump instead of sleeping.
+    static void onDump(Runnable listener) {
+        dumpListener = listener;
+    }
+
+    public static synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    // All metrics as text, one line per operation followed by the totals
+    public static String dump() {
+        StringBuilder result = new StringBuilder();
+        result.append("registry metrics at ").append(Instant.now()).append(System.lineSeparator());
+        for (Operation operation : Operation.values()) {
+            OperationStats stats = OPERATIONS[operation.ordinal()];
+            result.append(String.format(Locale.ROOT,
+                    "  %s count=%d failures=%d errors=%d scanned=%d mean=%.1fus p50<=%.1fus p99<=%.1fus max=%.1fus%n",
+                    operation.displayName(), stats.getCount(), stats.getFailures(), stats.getErrors(),
+                    stats.getRecordsScanned(), stats.getMeanMicros(), stats.getP50Micros(), stats.getP99Micros(),
+                    stats.getMaxMicros()));
+        }
+        result.append(String.format(Locale.ROOT, "  bytesRead=%d bytesWritten=%d rowsRead=%d eventWriteFailures=%d ledgerWriteFailures=%d%n",
+                BYTES_READ.sum(), BYTES_WRITTEN.sum(), ROWS_READ.sum(), EVENT_WRITE_FAILURES.sum(), LEDGER_WRITE_FAILURES.sum()));
+        result.append("  validationFailures=").append(REGISTRY.getValidationFailures()).append(System.lineSeparator());
+        result.append("  skippedUpdates=").append(REGISTRY.getSkippedUpdates());
+        return result.toString();
+    }
+
+    // Clears all numbers, used by tests
+    static void reset() {
+        for (OperationStats stats : OPERATIONS) {
+            stats.reset();
+        }
+        for (LongAdder adder : VALIDATION_FAILURES) adder.reset();
+        for (LongAdder adder : UPDATE_SKIPS) adder.reset();
+        BYTES_READ.reset();
+        BYTES_WRITTEN.reset();
+        ROWS_READ.reset();
+        EVENT_WRITE_FAILURES.reset();
+        LEDGER_WRITE_FAILURES.reset();
+    }
+
+    private static void registerMBeans() {
+        if (registered) return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (Operation operation : Operation.values()) {
+                server.registerMBean(new StandardMBean(OPERATIONS[operation.ordinal()], OperationMXBean.class, true),
+                        new ObjectName("com.roadregistry:type=Operation,name=" + operation.displayName()));
+            }
+            server.registerMBean(new StandardMBean(REGISTRY, RegistryMXBean.class, true),
+                    new ObjectName("com.roadregistry:type=Registry"));
+            registered = true;
+        } catch (JMException e) {
+            // metrics are still recorded and dumped without JMX
+        }
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static <E extends Enum<E>> Map<String, Long> counts(E[] keys, LongAdder[] adders) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (E key : keys) {
+            long count = adders[key.ordinal()].sum();
+            if (count > 0) result.put(key.name(), count);
+        }
+        return result;
+    }
+
+    private static final RegistryMXBean REGISTRY = new RegistryMXBean() {
+        @Override
+        public long getBytesRead() {
+            return BYTES_READ.sum();
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return BYTES_WRITTEN.sum();
+        }
+
+        @Override
+        public long getRowsRead() {
+            return ROWS_READ.sum();
+        }
+
+        @Override
+        public Map<String, Long> getValidationFailures() {
+            return counts(ValidationFailure.values(), VALIDATION_FAILURES);
+        }
+
+        @Override
+        public Map<String, Long> getSkippedUpdates() {
+            return counts(UpdateSkip.values(), UPDATE_SKIPS);
+        }
+
+        @Override
+        public long getEventWriteFailures() {
+            return EVENT_WRITE_FAILURES.sum();
+        }
+
+        @Override
+        public long getLedgerWriteFailures() {
+            return LEDGER_WRITE_FAILURES.sum();
+        }
+
+        @Override
+        public String getDump() {
+            return dump();
+        }
+    };
+
+    // Counters and latency histogram of one operation
+    private static final class OperationStats implements OperationMXBean {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder scanned = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        // bucket b holds the latencies below 2^b nanoseconds that do not fit in bucket b - 1
+        private final LongAdder[] buckets = adders(BUCKETS);
+
+        void record(long nanos, boolean success) {
+            count.increment();
+            if (!success) failures.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0)))].increment();
+        }
+
+        void reset() {
+            count.reset();
+            failures.reset();
+            errors.reset();
+            scanned.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+            for (LongAdder bucket : buckets) bucket.reset();
+        }
+
+        // Upper bound of the latency below which the given fraction of the operations finished
+        double percentileMicros(double fraction) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            if (total == 0) return 0;
+
+            long wanted = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= wanted) {
+                    return Math.min((double) (1L << Math.min(i, 62)), maxNanos.get()) / 1000.0;
+                }
+            }
+            return maxNanos.get() / 1000.0;
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public long getRecordsScanned() {
+            return scanned.sum();
+        }
+
+        @Override
+        public double getMeanMicros() {
+            long operations = count.sum();
+            return (operations == 0) ? 0 : totalNanos.sum() / 1000.0 / operations;
+        }
+
+        @Override
+        public double getP50Micros() {
+            return percentileMicros(0.50);
+        }
+
+        @Override
+        public double getP99Micros() {
+            return percentileMicros(0.99);
+        }
+
+        @Override
+        public double getMaxMicros() {
+            return maxNanos.get() / 1000.0;
+        }
+    }
+}
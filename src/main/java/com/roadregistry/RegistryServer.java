@@ -0,0 +1,178 @@
+package com.roadregistry;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+
+// Serves a registry file to other processes over a plain TCP line protocol. Every request is one
+// line of tab separated fields and gets exactly one response line, in the order the requests were
+// sent, so a client can pipeline many requests on one connection without waiting for the answers.
+//
+//   ADD      id first last address birthday          -> OK | FAILED
+//   UPDATE   oldId id first last address birthday    -> OK | FAILED
+//   DEMERIT  id points dd-MM-yyyy                    -> OK | FAILED
+//   GET      id                                      -> OK <record> | NOT_FOUND
+//   PING                                             -> OK
+//
+// A malformed request is answered with "ERROR <message>". Each connection runs on its own virtual
+// thread and handles its requests one after the other, so a request sees the effect of every
+// request sent before it on the same connection. Connections run in parallel; the registry is
+// shared, so requests for different people go on at the same time and requests for the same
+// person are serialized by its lock. Every request, lookups included, goes through Person, so the
+// server works the same way on a sharded or streamed registry as the rest of the program.
+public class RegistryServer implements Closeable {
+    private final String filePath;
+    private final ServerSocket serverSocket;
+    private volatile boolean running = true;
+    private boolean streaming = false;
+    private ShardedRegistry shardedRegistry = null;
+
+    // Opens the server on the given port of the loopback address, 0 picks a free port
+    public RegistryServer(String filePath, int port) throws IOException {
+        this.filePath = filePath;
+        this.serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+    }
+
+    // Serves the registry file in streaming mode, see Person.setStreaming. Set before start().
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    // Serves a sharded registry instead of the file, see Person.setShardedRegistry. Set before start().
+    public void setShardedRegistry(ShardedRegistry registry) {
+        this.shardedRegistry = registry;
+    }
+
+    // Starts accepting connections in the background
+    public RegistryServer start() {
+        Thread.ofVirtual().name("registry-server-accept").start(this::acceptConnections);
+        return this;
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+    }
+
+    private void acceptConnections() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread.ofVirtual().start(() -> serve(socket));
+            } catch (IOException e) {
+                // the server socket was closed
+            }
+        }
+    }
+
+    // Answers the requests of one connection in the order they arrive. Answers go out in one write
+    // for all requests the client has already sent, so pipelining still saves round trips.
+    private void serve(Socket socket) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.write(respond(line));
+                writer.newLine();
+                if (!reader.ready()) writer.flush();
+            }
+        } catch (IOException e) {
+            // the client went away or the server is closing
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    private String respond(String request) {
+        try {
+            return handle(request);
+        } catch (IOException | RuntimeException e) {
+            return "ERROR " + e.getMessage();
+        }
+    }
+
+    // Runs one request and returns its response line
+    String handle(String request) throws IOException {
+        String[] fields = request.split("\t", -1);
+        switch (fields[0]) {
+            case "ADD":
+                expectFields(fields, 6);
+                return status(person(fields[1], fields, 2).addPerson());
+            case "UPDATE":
+                expectFields(fields, 7);
+                Person updated = person(fields[2], fields, 3);
+                updated.setOldPersonID(fields[1]);
+                return status(updated.updatePersonalDetails());
+            case "DEMERIT":
+                expectFields(fields, 4);
+                int points;
+                try {
+                    points = Integer.parseInt(fields[2]);
+                } catch (NumberFormatException e) {
+                    return "ERROR points must be a number";
+                }
+                Person caller = caller(fields[1]);
+                return status(caller.addDemeritPoints(fields[1], points, fields[3]).equals("Success"));
+            case "GET":
+                expectFields(fields, 2);
+                PersonRecord record = caller(fields[1]).lookup(fields[1]);
+                return (record == null) ? "NOT_FOUND" : "OK\t" + record.getLine();
+            case "PING":
+                return "OK";
+            default:
+                return "ERROR unknown request " + fields[0];
+        }
+    }
+
+    private Person person(String id, String[] fields, int from) {
+        return configure(new Person(id, fields[from], fields[from + 1], fields[from + 2], fields[from + 3]));
+    }
+
+    // Person that only acts on the record of another person, for demerits and lookups
+    private Person caller(String id) {
+        return configure(new Person(id, "", "", "", ""));
+    }
+
+    private Person configure(Person person) {
+        person.setFilePath(filePath);
+        person.setStreaming(streaming);
+        if (shardedRegistry != null) person.setShardedRegistry(shardedRegistry);
+        return person;
+    }
+
+    private static void expectFields(String[] fields, int count) {
+        if (fields.length != count) {
+            throw new IllegalArgumentException(fields[0] + " takes " + (count - 1) + " fields");
+        }
+    }
+
+    private static String status(boolean success) {
+        return success ? "OK" : "FAILED";
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    // Usage: RegistryServer <port> [registry file]
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: RegistryServer <port> [registry file]");
+            return;
+        }
+        String registry = (args.length == 2) ? args[1] : "persons.txt";
+        RegistryServer server = new RegistryServer(registry, Integer.parseInt(args[0])).start();
+        System.out.println("Serving " + registry + " on port " + server.port());
+        Thread.currentThread().join();
+    }
+}
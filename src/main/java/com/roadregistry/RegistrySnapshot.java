@@ -0,0 +1,143 @@
+package com.roadregistry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// Checkpoint of the rows of a CSV registry file, kept next to it ("persons.txt.snap") so that a
+// restart does not have to scan the registry for line ends, trim and split every line. The rows
+// are stored with their length and the positions of their commas, and the whole snapshot is read
+// through one memory mapping.
+//
+// A snapshot belongs to one state of the registry file: it records the length and modification
+// time the file had when the snapshot was written, and it is only used while the file still has
+// them. Changes made after that are in the write-ahead log, which is replayed on top as usual.
+//
+// Layout:
+//   header   "RRS1", int version, long file length, long file modified, int row count,
+//            long body length, long CRC32 of the body and the header fields before it
+//   body     per row: int line length in bytes, the line in UTF-8, short field count,
+//            then the char offset of each comma as a short
+public class RegistrySnapshot {
+    private static final byte[] MAGIC = {'R', 'R', 'S', '1'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + Integer.BYTES + 2 * Long.BYTES + Integer.BYTES + 2 * Long.BYTES;
+
+    private RegistrySnapshot() {
+    }
+
+    // Writes the rows as the snapshot of a registry file with the given length and modification
+    // time. Returns false and writes nothing if a row is too long for the layout, the registry
+    // file is then read on the next start.
+    public static boolean write(Iterable<PersonRecord> rows, long fileLength, long fileModified, Path path) throws IOException {
+        Path tempFile = Path.of(path + ".tmp");
+        CRC32 crc = new CRC32();
+        long bodyLength = 0;
+        int count = 0;
+        boolean fits = true;
+
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            channel.position(HEADER_SIZE);
+            for (PersonRecord record : rows) {
+                if (record == null) continue;
+                byte[] line = record.getLine().getBytes(StandardCharsets.UTF_8);
+                int fields = record.fieldCount();
+                if (line.length > Short.MAX_VALUE || fields > Short.MAX_VALUE) {
+                    fits = false;
+                    break;
+                }
+                int size = Integer.BYTES + line.length + Short.BYTES * fields;
+                if (buffer.remaining() < size) {
+                    bodyLength += drain(buffer, channel, crc);
+                    if (buffer.capacity() < size) buffer = ByteBuffer.allocate(size);
+                }
+                buffer.putInt(line.length).put(line).putShort((short) fields);
+                int comma = -1;
+                for (int i = 0; i < fields - 1; i++) {
+                    comma += record.field(i).length() + 1;
+                    buffer.putShort((short) comma);
+                }
+                count++;
+            }
+            if (fits) {
+                bodyLength += drain(buffer, channel, crc);
+
+                buffer.clear();
+                buffer.put(MAGIC).putInt(VERSION).putLong(fileLength).putLong(fileModified).putInt(count).putLong(bodyLength);
+                crc.update(buffer.duplicate().flip());
+                buffer.putLong(crc.getValue()).flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, buffer.position());
+                }
+            }
+        }
+        if (!fits) {
+            Files.deleteIfExists(tempFile);
+            return false;
+        }
+        PersonRepository.moveIntoPlace(tempFile, path);
+        RegistryMetrics.bytesWritten(HEADER_SIZE + bodyLength);
+        return true;
+    }
+
+    // Reads the rows of the snapshot if it belongs to a registry file with the given length and
+    // modification time. Returns null if the snapshot is missing, belongs to another state of the
+    // file or is damaged.
+    public static List<PersonRecord> read(Path path, long fileLength, long fileModified) throws IOException {
+        if (!Files.exists(path)) return null;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buffer.getInt() != VERSION) return null;
+            if (buffer.getLong() != fileLength || buffer.getLong() != fileModified) return null;
+            int count = buffer.getInt();
+            long bodyLength = buffer.getLong();
+            long checksum = buffer.getLong();
+            if (bodyLength != size - HEADER_SIZE) return null;
+
+            // the whole snapshot is checked before the first row is handed out
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(HEADER_SIZE, (int) bodyLength));
+            crc.update(buffer.slice(0, HEADER_SIZE - Long.BYTES));
+            if (crc.getValue() != checksum) return null;
+
+            RegistryMetrics.bytesRead(size);
+            List<PersonRecord> rows = new ArrayList<>(count);
+            byte[] line = new byte[256];
+            for (int row = 0; row < count; row++) {
+                int length = buffer.getInt();
+                if (line.length < length) line = new byte[Math.max(length, line.length * 2)];
+                buffer.get(line, 0, length);
+                int[] commas = new int[buffer.getShort() - 1];
+                for (int i = 0; i < commas.length; i++) {
+                    commas[i] = buffer.getShort();
+                }
+                rows.add(PersonRecord.parse(new String(line, 0, length, StandardCharsets.UTF_8), commas));
+            }
+            return rows;
+        }
+    }
+
+    private static long drain(ByteBuffer buffer, FileChannel channel, CRC32 crc) throws IOException {
+        buffer.flip();
+        int length = buffer.remaining();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return length;
+    }
+}
@@ -0,0 +1,285 @@
+package com.roadregistry;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// A registry spread over several files in one directory ("shard-0.txt", "shard-1.txt", ...). Each
+// person lives in the shard picked by a hash of their personID, and every shard is an ordinary
+// PersonRepository with its own locks, write-ahead log and compaction, so changes to people in
+// different shards never wait for each other and a compaction only rewrites one shard.
+//
+// Shards are picked by a hash rather than the leading digits of the ID: the first two characters
+// are digits 2-9, which would allow at most 64 shards and put similar IDs together.
+//
+// When an ID change moves a person to another shard the record is added to the new shard and
+// removed from the old one. The move is first written to a journal in the directory; a move that
+// was cut short by a crash is finished when the registry is opened again, so the person ends up in
+// exactly one shard.
+public class ShardedRegistry {
+    private static final Map<String, ShardedRegistry> OPEN = new HashMap<>();
+    private static final String COUNT_FILE = "shard-count";
+    private static final String JOURNAL_FILE = "moves.journal";
+    private static final String LEDGER_NAME = "demerits";
+    private static final String EVENTS_NAME = "registry";
+
+    private final File directory;
+    private final PersonRepository[] shards;
+    private final File journalFile;
+
+    // the fields below are guarded by this
+    private BufferedWriter journal;
+    private long nextMove = 0;
+    private int movesInFlight = 0;
+
+    private ShardedRegistry(File directory, int shardCount) {
+        this.directory = directory;
+        this.shards = new PersonRepository[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = PersonRepository.forFile(shardFile(directory, i));
+        }
+        this.journalFile = new File(directory, JOURNAL_FILE);
+    }
+
+    // Returns the shared registry stored in the given directory, creating it with the given number
+    // of shards. A directory keeps the shard count it was created with.
+    public static ShardedRegistry open(String directory, int shardCount) throws IOException {
+        if (shardCount < 1) throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        File dir = new File(directory).getAbsoluteFile();
+        synchronized (OPEN) {
+            ShardedRegistry registry = OPEN.get(dir.getPath());
+            if (registry == null) {
+                Files.createDirectories(dir.toPath());
+                checkShardCount(new File(dir, COUNT_FILE).toPath(), shardCount);
+                registry = new ShardedRegistry(dir, shardCount);
+                registry.recover();
+                OPEN.put(dir.getPath(), registry);
+            } else if (registry.shards.length != shardCount) {
+                throw new IOException(directory + " has " + registry.shards.length + " shards, not " + shardCount);
+            }
+            return registry;
+        }
+    }
+
+    // Drops the shared registry for the directory without finishing anything, as if the program had
+    // stopped. Only used by tests to check what is recovered from the files on disk.
+    static void evict(String directory) throws IOException {
+        ShardedRegistry registry;
+        synchronized (OPEN) {
+            registry = OPEN.remove(new File(directory).getAbsoluteFile().getPath());
+        }
+        if (registry == null) return;
+        for (int i = 0; i < registry.shards.length; i++) {
+            PersonRepository.evict(shardFile(registry.directory, i));
+        }
+        synchronized (registry) {
+            if (registry.journal != null) registry.journal.close();
+        }
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    // Shard that holds the given personID
+    public int shardOf(String personID) {
+        // use the high bits of the product so the shard does not follow the lock stripe of the ID
+        long mixed = (personID.hashCode() & 0xffffffffL) * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(mixed >>> 32, (long) shards.length);
+    }
+
+    // Repository of the shard that holds the given personID
+    public PersonRepository shardFor(String personID) {
+        return shards[shardOf(personID)];
+    }
+
+    // Returns the first record with the given ID, or null if there is none
+    public PersonRecord find(String personID) throws IOException {
+        return shardFor(personID).find(personID);
+    }
+
+    // Number of people in all shards
+    public int size() throws IOException {
+        int size = 0;
+        for (PersonRepository shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    // Ledger of the offences of the people in all shards
+    public DemeritLedger ledger() {
+        return DemeritLedger.forFile(new File(directory, LEDGER_NAME).getPath());
+    }
+
+    // Change events of the people in all shards
+    public RegistryEvents events() {
+        return RegistryEvents.forFile(new File(directory, EVENTS_NAME).getPath());
+    }
+
+    // Moves the offences older than two years out of the rows of all shards into the cold
+    // segments of the ledger, returns the number of offences moved
+    public int archiveDemerits(LocalDate today) throws IOException {
+        return ledger().archive(today, shards);
+    }
+
+    // Folds the logs of all shards into their files
+    public void compact() throws IOException {
+        for (PersonRepository shard : shards) {
+            shard.compact();
+        }
+    }
+
+    // Replaces the first record with the ID idToMatch that the update accepts. The new record has
+    // the ID newID; if that belongs to another shard the record is moved there.
+    public boolean updateFirst(String idToMatch, String newID, StreamingRegistryFile.RowUpdate update) throws IOException {
+        return updateFirst(idToMatch, newID, update, null);
+    }
+
+    // Same as updateFirst(), and then passes the changed row to the listener before the IDs are unlocked
+    public boolean updateFirst(String idToMatch, String newID, StreamingRegistryFile.RowUpdate update,
+                               StreamingRegistryFile.RowChanged listener) throws IOException {
+        int from = shardOf(idToMatch);
+        int to = shardOf(newID);
+        PersonRepository source = shards[from];
+
+        if (from == to) {
+            StripedLock.Held held = source.lockFor(idToMatch, newID);
+            try {
+                for (int row : source.rowsOf(idToMatch)) {
+                    PersonRecord original = source.get(row);
+                    PersonRecord updated = update.apply(original);
+                    if (updated == null) continue;
+                    source.set(row, updated);
+                    if (listener != null) listener.changed(original, updated);
+                    return true;
+                }
+            } finally {
+                held.unlock();
+            }
+            return false;
+        }
+
+        // both shards are locked in shard order, so two moves in opposite directions cannot deadlock
+        String firstID = (from < to) ? idToMatch : newID;
+        String secondID = (from < to) ? newID : idToMatch;
+        StripedLock.Held first = shards[Math.min(from, to)].lockFor(firstID);
+        try {
+            StripedLock.Held second = shards[Math.max(from, to)].lockFor(secondID);
+            try {
+                for (int row : source.rowsOf(idToMatch)) {
+                    PersonRecord original = source.get(row);
+                    PersonRecord updated = update.apply(original);
+                    if (updated == null) continue;
+                    move(from, row, original, to, updated);
+                    if (listener != null) listener.changed(original, updated);
+                    return true;
+                }
+            } finally {
+                second.unlock();
+            }
+        } finally {
+            first.unlock();
+        }
+        return false;
+    }
+
+    // Moves a record to another shard, the caller holds the locks of both IDs
+    private void move(int from, int row, PersonRecord original, int to, PersonRecord updated) throws IOException {
+        long move = beginMove(from, to, original, updated);
+        shards[to].append(updated);
+        shards[from].remove(row);
+        endMove(move);
+    }
+
+    // Writes a move to the journal before any shard is changed
+    synchronized long beginMove(int from, int to, PersonRecord original, PersonRecord updated) throws IOException {
+        if (journal == null) {
+            journal = new BufferedWriter(new FileWriter(journalFile, StandardCharsets.UTF_8, true));
+        }
+        long move = nextMove++;
+        String payload = from + "," + to + "," + original.getLine().length() + "," + original.getLine() + updated.getLine();
+        journal.write("M," + move + "," + checksum(payload) + "," + payload);
+        journal.newLine();
+        journal.flush();
+        movesInFlight++;
+        return move;
+    }
+
+    // Marks a move as done, the journal is dropped once no move is in flight
+    private synchronized void endMove(long move) throws IOException {
+        journal.write("C," + move);
+        journal.newLine();
+        journal.flush();
+        if (--movesInFlight == 0) {
+            journal.close();
+            journal = null;
+            Files.deleteIfExists(journalFile.toPath());
+        }
+    }
+
+    // Finishes the moves a crash left half done. A move that is only in the journal is applied, a
+    // move that reached one of the shards is completed, and a finished move is left alone.
+    private void recover() throws IOException {
+        if (!journalFile.exists()) return;
+
+        Map<String, String> unfinished = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(journalFile, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",", 4);
+                if (parts[0].equals("M") && parts.length == 4 && checksum(parts[3]).equals(parts[2])) {
+                    unfinished.put(parts[1], parts[3]);
+                } else if (parts[0].equals("C") && parts.length == 2) {
+                    unfinished.remove(parts[1]);
+                }
+                // anything else is a record torn by the crash, its move never started
+            }
+        }
+
+        for (String payload : unfinished.values()) {
+            String[] parts = payload.split(",", 4);
+            int from = Integer.parseInt(parts[0]);
+            int to = Integer.parseInt(parts[1]);
+            int originalLength = Integer.parseInt(parts[2]);
+            String original = parts[3].substring(0, originalLength);
+            String updated = parts[3].substring(originalLength);
+
+            if (!shards[to].contains(updated)) {
+                shards[to].append(PersonRecord.parse(updated));
+            }
+            PersonRepository source = shards[from];
+            for (int row : source.rowsOf(PersonRecord.parse(original).getPersonID())) {
+                if (source.get(row).getLine().equals(original)) {
+                    source.remove(row);
+                    break;
+                }
+            }
+        }
+        Files.deleteIfExists(journalFile.toPath());
+    }
+
+    private static String shardFile(File directory, int shard) {
+        return new File(directory, "shard-" + shard + ".txt").getPath();
+    }
+
+    private static void checkShardCount(Path countFile, int shardCount) throws IOException {
+        if (Files.exists(countFile)) {
+            int existing = Integer.parseInt(Files.readString(countFile).trim());
+            if (existing != shardCount) {
+                throw new IOException(countFile.getParent() + " was created with " + existing + " shards, not " + shardCount);
+            }
+        } else {
+            Files.writeString(countFile, String.valueOf(shardCount));
+        }
+    }
+
+    private static String checksum(String payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+}
@@ -0,0 +1,167 @@
+package com.roadregistry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Changes rows of a registry file in the CSV layout without holding the registry in memory. The
+// file is read row by row and copied to a temporary file, only the rows with the given ID are
+// handed to the update, and the copy is renamed over the original once it is complete. Memory use
+// does not depend on the size of the registry, which makes this the mode for registries that do
+// not fit in the heap; PersonRepository keeps every row in memory.
+//
+// Rows are written back the way PersonRepository compacts them: trimmed and without blank lines.
+// All personIDs of the file are locked while it is rewritten, and changes still waiting in the
+// write-ahead log of the repository are folded into the file first. find() looks a person up
+// through MappedPersonFile, which decodes only the matching row, and append() adds a row at the
+// end of the file without reading the others.
+public class StreamingRegistryFile {
+
+    // Works out the new version of a row, or returns null to leave it unchanged
+    public interface RowUpdate {
+        PersonRecord apply(PersonRecord record);
+    }
+
+    // Told about each changed row once the change is stored, while the rows are still locked
+    public interface RowChanged {
+        void changed(PersonRecord original, PersonRecord updated) throws IOException;
+    }
+
+    private StreamingRegistryFile() {
+    }
+
+    // Passes the rows with the given ID to the update in file order, stopping after the first
+    // changed row if firstOnly is set. Returns the number of rows changed; the file is only
+    // replaced if there is at least one.
+    public static int update(String path, String personID, RowUpdate update, boolean firstOnly) throws IOException {
+        return update(path, personID, update, firstOnly, null);
+    }
+
+    // Returns the first row with the given ID, or null if there is none, without loading the
+    // registry. The file is scanned through a memory mapping and only the matching row is decoded.
+    public static PersonRecord find(String path, String personID) throws IOException {
+        PersonRepository repository = PersonRepository.forFile(path);
+        StripedLock.Held held = repository.lockFor(personID);
+        try {
+            // changes still in the write-ahead log are only complete in the repository's rows
+            if (repository.hasPendingChanges()) return repository.find(personID);
+            Path file = Path.of(path);
+            return Files.exists(file) ? MappedPersonFile.find(file, personID) : null;
+        } finally {
+            held.unlock();
+        }
+    }
+
+    // True if a row with exactly the same content as the line is stored. Only the rows with the
+    // same ID are decoded. The caller holds the lock of the ID, as for append().
+    public static boolean contains(String path, String line) throws IOException {
+        PersonRepository repository = PersonRepository.forFile(path);
+        if (repository.hasPendingChanges()) return repository.contains(line);
+        Path file = Path.of(path);
+        if (!Files.exists(file)) return false;
+
+        boolean[] found = {false};
+        MappedPersonFile.forEachWithID(file, PersonRecord.parse(line).getPersonID(),
+                record -> found[0] |= record.getLine().equals(line));
+        return found[0];
+    }
+
+    // Adds the record at the end of the file without loading the registry. The caller holds the
+    // lock of its ID, which keeps a rewrite by update() out; other appends wait for the repository.
+    // A repository that has the rows in memory notices the longer file and loads it again.
+    public static void append(String path, PersonRecord record) throws IOException {
+        PersonRepository repository = PersonRepository.forFile(path);
+        synchronized (repository) {
+            // changes still in the write-ahead log have to stay in front of the new row
+            if (repository.hasPendingChanges()) {
+                repository.append(record);
+                return;
+            }
+            byte[] line = (record.getLine() + "\n").getBytes(StandardCharsets.UTF_8);
+            try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long end = channel.size();
+                ByteBuffer buffer;
+                if (end > 0 && lastByte(channel, end) != '\n') {
+                    // the last row of a file written by hand may have no line break
+                    buffer = ByteBuffer.allocate(line.length + 1).put((byte) '\n').put(line).flip();
+                } else {
+                    buffer = ByteBuffer.wrap(line);
+                }
+                RegistryMetrics.bytesWritten(buffer.remaining());
+                while (buffer.hasRemaining()) {
+                    end += channel.write(buffer, end);
+                }
+            }
+        }
+    }
+
+    private static byte lastByte(FileChannel channel, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        if (channel.read(buffer, size - 1) != 1) throw new EOFException();
+        return buffer.get(0);
+    }
+
+    // Same as update(), and then passes every changed row to the listener before the file is unlocked
+    public static int update(String path, String personID, RowUpdate update, boolean firstOnly, RowChanged listener) throws IOException {
+        PersonRepository repository = PersonRepository.forFile(path);
+        StripedLock.Held held = repository.lockAll();
+        try {
+            if (repository.hasPendingChanges()) {
+                repository.compact();
+            }
+
+            Path file = Path.of(path);
+            // an unknown ID is found out by the mapped scan, without copying the file
+            if (MappedPersonFile.find(file, personID) == null) return 0;
+            Path tempFile = Path.of(path + ".stream.tmp");
+            List<PersonRecord[]> changes = new ArrayList<>();
+            int rows = 0;
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                 BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty()) continue;
+
+                    rows++;
+                    PersonRecord record = PersonRecord.parse(line);
+                    if ((changes.isEmpty() || !firstOnly) && record.getPersonID().equals(personID)) {
+                        PersonRecord updated = update.apply(record);
+                        if (updated != null) {
+                            changes.add(new PersonRecord[] {record, updated});
+                            record = updated;
+                        }
+                    }
+                    writer.write(record.getLine());
+                    writer.newLine();
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tempFile);
+                throw e;
+            }
+
+            RegistryMetrics.rowsRead(rows);
+            if (RegistryMetrics.isEnabled()) {
+                RegistryMetrics.bytesRead(Files.size(file));
+                if (!changes.isEmpty()) RegistryMetrics.bytesWritten(Files.size(tempFile));
+            }
+            if (changes.isEmpty()) {
+                Files.deleteIfExists(tempFile);
+            } else {
+                PersonRepository.moveIntoPlace(tempFile, file);
+            }
+            if (listener != null) {
+                for (PersonRecord[] change : changes) {
+                    listener.changed(change[0], change[1]);
+                }
+            }
+            return changes.size();
+        } finally {
+            held.unlock();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.roadregistry;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+// A fixed set of locks shared by all personIDs. Each ID always maps to the same stripe, so work on
+// one person is serialized while work on people in other stripes runs in parallel.
+public class StripedLock {
+    private final ReentrantLock[] stripes;
+
+    // Locks taken by lock(), released again by unlock(). Callers unlock in a finally block, the
+    // same way as a plain java.util.concurrent lock.
+    public static final class Held {
+        private final ReentrantLock[] locks;
+
+        private Held(ReentrantLock[] locks) {
+            this.locks = locks;
+        }
+
+        public void unlock() {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    public StripedLock(int stripeCount) {
+        stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    // Locks the stripes of all given IDs. Stripes are always taken in ascending order so two
+    // callers locking the same pair of IDs (for example an ID change) cannot deadlock.
+    public Held lock(String... personIDs) {
+        int[] indexes = new int[personIDs.length];
+        for (int i = 0; i < personIDs.length; i++) {
+            indexes[i] = stripeOf(personIDs[i]);
+        }
+        Arrays.sort(indexes);
+
+        int count = 0;
+        for (int i = 0; i < indexes.length; i++) {
+            if (i == 0 || indexes[i] != indexes[i - 1]) {
+                indexes[count++] = indexes[i];
+            }
+        }
+
+        ReentrantLock[] locks = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = stripes[indexes[i]];
+            locks[i].lock();
+        }
+        return new Held(locks);
+    }
+
+    // Locks every stripe, for work that touches many people at once such as a bulk import
+    public Held lockAll() {
+        for (ReentrantLock lock : stripes) {
+            lock.lock();
+        }
+        return new Held(stripes.clone());
+    }
+
+    // Stripe used for the given ID
+    int stripeOf(String personID) {
+        int hash = (personID == null) ? 0 : personID.hashCode();
+        // spread the high bits, IDs often only differ in a few characters
+        hash ^= (hash >>> 16);
+        return Math.floorMod(hash, stripes.length);
+    }
+}
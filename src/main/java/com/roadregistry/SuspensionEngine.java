@@ -0,0 +1,253 @@
+package com.roadregistry;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Keeps the suspension status of the registry up to date as offences age out of the two year
+// window. addDemeritPoints only works the status out when a new offence comes in, so without this
+// a person whose old offences expire stays suspended until their next offence.
+//
+// The engine keeps, per row, the total of the points that have not expired yet and a queue of all
+// offences ordered by the day they expire. A tick takes the offences that expired since the last
+// tick off the queue, subtracts their points and only looks at the people they belong to, so the
+// cost of a tick depends on the number of expired offences and not on the size of the registry.
+// The thresholds and the age are the ones used by addDemeritPoints. On the first tick of a new
+// year the people whose age could move them across a threshold are looked at as well.
+//
+// The engine follows the rows through a PersonRepository.Listener and keeps its own state while
+// holding the repository's lock. Writing a new status is a read-modify-write of a person like
+// updatePersonalDetails and addDemeritPoints, so it also takes that person's lock first (in the
+// same order: person, then repository) and a tick never lands between their read and write.
+public class SuspensionEngine {
+    private static final Map<String, SuspensionEngine> OPEN = new HashMap<>();
+    private static final long TICK_INTERVAL_MINUTES = 60;
+    private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "suspension-engine");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final PersonRepository repository;
+    private final RegistryEvents events;
+    private ScheduledFuture<?> schedule;
+
+    // day of the last tick, null until the first one. Offences that expired on or before it are no
+    // longer counted or queued.
+    private LocalDate clock;
+
+    // per row: points of the offences not expired at the clock, and a version that is bumped on
+    // every change so queued offences of an older version of the row are skipped
+    private int[] totals = new int[1024];
+    private int[] versions = new int[1024];
+    // rows above the under 21 limit, the only ones whose status can change with their age
+    private final BitSet aboveYoungLimit = new BitSet();
+    private final PriorityQueue<Expiry> expiries = new PriorityQueue<>(Comparator.comparingInt(Expiry::day));
+    // bumped every time the registry is read again, row positions from before are no longer valid
+    private int generation = 0;
+
+    // An offence of a row, leaving the two year window on the given epoch day
+    private record Expiry(int day, int row, int version, int points) {
+    }
+
+    private SuspensionEngine(PersonRepository repository, RegistryEvents events) {
+        this.repository = repository;
+        this.events = events;
+    }
+
+    // Returns the shared engine for the given registry file, reading the registry once to set it up
+    public static SuspensionEngine forFile(String path) throws IOException {
+        String key = new File(path).getAbsoluteFile().getPath();
+        synchronized (OPEN) {
+            SuspensionEngine engine = OPEN.get(key);
+            if (engine == null) {
+                engine = new SuspensionEngine(PersonRepository.forFile(path), RegistryEvents.forFile(path));
+                engine.attach();
+                OPEN.put(key, engine);
+            }
+            return engine;
+        }
+    }
+
+    // Starts ticking in the background. A tick on a day with nothing expiring costs next to nothing.
+    public synchronized void start() {
+        if (schedule != null) return;
+        schedule = TICKER.scheduleWithFixedDelay(() -> {
+            try {
+                tick(LocalDate.now());
+            } catch (IOException e) {
+                // the registry could not be written, the same people are tried again next tick
+            }
+        }, 0, TICK_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public synchronized void stop() {
+        if (schedule != null) {
+            schedule.cancel(false);
+            schedule = null;
+        }
+    }
+
+    // Brings the suspension status up to date for the given day, returns the number of people
+    // whose status was changed
+    public int tick(LocalDate today) throws IOException {
+        Set<Integer> affected = new TreeSet<>();
+        int startGeneration;
+        synchronized (repository) {
+            // picks up changes made to the file outside of the repository
+            repository.size();
+
+            startGeneration = generation;
+            int todayDay = (int) today.toEpochDay();
+            while (!expiries.isEmpty() && expiries.peek().day() <= todayDay) {
+                Expiry expiry = expiries.poll();
+                if (expiry.version() != versions[expiry.row()]) continue;
+                totals[expiry.row()] -= expiry.points();
+                affected.add(expiry.row());
+            }
+            if (clock != null && today.getYear() != clock.getYear()) {
+                aboveYoungLimit.stream().forEach(affected::add);
+            }
+            if (clock == null || today.isAfter(clock)) {
+                clock = today;
+            }
+        }
+
+        int changed = 0;
+        for (int row : affected) {
+            if (applyStatus(row, today, startGeneration)) changed++;
+        }
+        return changed;
+    }
+
+    // Points of the given row that count on the day of the last tick
+    public int recentPoints(int row) {
+        synchronized (repository) {
+            return (row < totals.length) ? totals[row] : 0;
+        }
+    }
+
+    private void attach() throws IOException {
+        synchronized (repository) {
+            int size = repository.size();
+            repository.addListener(new PersonRepository.Listener() {
+                @Override
+                public void rowChanged(int row, PersonRecord previous, PersonRecord current) {
+                    track(row, current);
+                }
+
+                @Override
+                public void reloaded() {
+                    reset();
+                }
+            });
+            for (int row = 0; row < size; row++) {
+                track(row, repository.get(row));
+            }
+        }
+    }
+
+    // Works out the running total of a row again and queues its offences
+    private void track(int row, PersonRecord record) {
+        if (row >= totals.length) {
+            int capacity = Math.max(row + 1, totals.length * 2);
+            totals = Arrays.copyOf(totals, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+        }
+        int version = ++versions[row];
+        int total = 0;
+        if (record == null) {
+            // the row was removed
+            totals[row] = 0;
+            aboveYoungLimit.clear(row);
+            return;
+        }
+        try {
+            DemeritHistory history = Person.parseDemerits(record.getDemerits());
+            int clockDay = (clock == null) ? Integer.MIN_VALUE : (int) clock.toEpochDay();
+            for (int i = 0; i < history.size(); i++) {
+                int expiryDay = expiryDay(history.dayAt(i));
+                if (expiryDay <= clockDay) continue;
+                total += history.pointsAt(i);
+                expiries.add(new Expiry(expiryDay, row, version, history.pointsAt(i)));
+            }
+        } catch (RuntimeException e) {
+            // a history that cannot be read counts as none, like in addDemeritPoints
+            total = 0;
+        }
+        totals[row] = total;
+        aboveYoungLimit.set(row, total > 6);
+    }
+
+    // The registry was read again, start over; the next tick looks at every expired offence
+    private void reset() {
+        generation++;
+        Arrays.fill(totals, 0);
+        Arrays.fill(versions, 0);
+        aboveYoungLimit.clear();
+        expiries.clear();
+        clock = null;
+    }
+
+    // Writes the status the running total asks for while holding the lock of the person in the
+    // row, returns true if it was different. An ID change can hand the row to another person
+    // before their lock is taken, then the lock of the new ID is taken instead.
+    private boolean applyStatus(int row, LocalDate today, int startGeneration) throws IOException {
+        while (true) {
+            String personID;
+            synchronized (repository) {
+                // the registry was read again, the offences are queued again for the next tick
+                if (generation != startGeneration) return false;
+                PersonRecord record = repository.get(row);
+                if (record == null) return false;
+                personID = record.getPersonID();
+            }
+            StripedLock.Held held = repository.lockFor(personID);
+            try {
+                synchronized (repository) {
+                    if (generation != startGeneration) return false;
+                    PersonRecord record = repository.get(row);
+                    if (record == null) return false;
+                    if (record.getPersonID().equals(personID)) return applyStatus(row, record, today);
+                }
+            } finally {
+                held.unlock();
+            }
+        }
+    }
+
+    private boolean applyStatus(int row, PersonRecord record, LocalDate today) throws IOException {
+        if (record.fieldCount() < 6) return false;
+
+        boolean suspend;
+        try {
+            suspend = Person.shouldSuspend(Person.getAge(record.getBirthday(), today), totals[row]);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        if (suspend == record.isSuspended()) return false;
+
+        String[] fields = new String[record.fieldCount()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = record.field(i);
+        }
+        fields[5] = String.valueOf(suspend);
+        PersonRecord updated = PersonRecord.of(fields);
+        repository.set(row, updated);
+        Person.publishSuspension(events, record, updated);
+        return true;
+    }
+
+    // First day on which an offence no longer counts. DemeritHistory.recentPoints counts offences
+    // strictly after today minus two years, so this is the first day whose date two years earlier
+    // is not before the offence (29 February expires on 1 March).
+    static int expiryDay(int offenceDay) {
+        LocalDate offence = LocalDate.ofEpochDay(offenceDay);
+        LocalDate expiry = offence.plusYears(2);
+        if (expiry.minusYears(2).isBefore(offence)) {
+            expiry = expiry.plusDays(1);
+        }
+        return (int) expiry.toEpochDay();
+    }
+}
@@ -0,0 +1,23 @@
+package com.roadregistry;
+
+// Reasons why a person record is rejected
+public enum ValidationFailure {
+    // the ID is missing or not exactly 10 characters long
+    ID_LENGTH,
+    // the first two characters of the ID are not digits between 2 and 9
+    ID_PREFIX,
+    // the last two characters of the ID are not capital letters
+    ID_SUFFIX,
+    // the middle of the ID has fewer than two special characters
+    ID_SPECIAL_CHARACTERS,
+    // the address is not "number|street|city|state|country"
+    ADDRESS_FORMAT,
+    // the state of the address is not Victoria
+    ADDRESS_STATE,
+    // the date is not in the dd-MM-yyyy format
+    DATE_FORMAT,
+    // the row does not have the six fields of the registry layout
+    RECORD_FORMAT,
+    // exactly the same record is already in the registry
+    DUPLICATE_RECORD
+}
@@ -0,0 +1,135 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+public class BinaryRegistryFileTest {
+
+    private static final List<String> REGISTRY = List.of(
+            "36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false",
+            "56uu$$ddGG,Mia,Chen,3|John St|Melbourne|Victoria|Australia,01-01-2006,true,01-01-2024:3;01-03-2024:4",
+            "65zx@#rtKL,Lewis,Hamilton,88|Track Rd|Geelong|Victoria|Australia,05-01-1985,false,",
+            "22aa!!rrYY,Nina,Brown,55|Bourke St|Melbourne|Victoria|Australia,15-04-2000,false,01-06-2024:4",
+            "not a valid row");
+
+    @TempDir
+    Path tempDir;
+
+    // Test Case 1 - converting to binary and back gives exactly the same registry
+    @Test
+    public void testCsvRoundTrip() throws IOException {
+        Path csv = tempDir.resolve("persons.txt");
+        Path binary = tempDir.resolve("persons.bin");
+        Path back = tempDir.resolve("back.txt");
+        Files.write(csv, REGISTRY);
+
+        BinaryRegistryFile.fromCsv(csv, binary);
+        BinaryRegistryFile.toCsv(binary, back);
+
+        assertEquals(REGISTRY, Files.readAllLines(back));
+    }
+
+    // Test Case 2 - demerit histories take less space than in the CSV layout
+    @Test
+    public void testBinaryIsSmallerForDemeritHistories() throws IOException {
+        StringBuilder demerits = new StringBuilder();
+        for (int day = 1; day <= 28; day++) {
+            if (day > 1) demerits.append(';');
+            demerits.append(String.format("%02d-03-2024:%d", day, day % 6 + 1));
+        }
+        Path csv = tempDir.resolve("persons.txt");
+        Path binary = tempDir.resolve("persons.bin");
+        Files.write(csv, List.of("56uu$$ddGG,Mia,Chen,3|John St|Melbourne|Victoria|Australia,01-01-2006,true," + demerits));
+        BinaryRegistryFile.fromCsv(csv, binary);
+
+        assertTrue(Files.size(binary) < Files.size(csv));
+    }
+
+    // Test Case 3 - single records are found through the sorted ID index
+    @Test
+    public void testFindByID() throws IOException {
+        Path csv = tempDir.resolve("persons.txt");
+        Path binary = tempDir.resolve("persons.bin");
+        Files.write(csv, REGISTRY);
+        BinaryRegistryFile.fromCsv(csv, binary);
+
+        assertEquals(REGISTRY.get(1), BinaryRegistryFile.find(binary, "56uu$$ddGG").getLine());
+        assertEquals(REGISTRY.get(3), BinaryRegistryFile.find(binary, "22aa!!rrYY").getLine());
+        assertNull(BinaryRegistryFile.find(binary, "99zz$$zzZZ"));
+        assertNull(BinaryRegistryFile.find(binary, "unknownID"));
+    }
+
+    // Test Case 4 - a registry file ending in .bin is stored in the binary layout
+    @Test
+    public void testPersonWithBinaryRegistry() throws IOException {
+        String path = tempDir.resolve("registry.bin").toString();
+        Person person = new Person("36cc$%xyER", "Danush", "Bala", "1|Elizabeth Street|Melbourne|Victoria|Australia", "12-11-1989");
+        person.setFilePath(path);
+        assertTrue(person.addPerson());
+        assertFalse(person.addPerson());
+        String date = LocalDate.now().minusMonths(1).format(DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+        assertEquals("Success", person.addDemeritPoints("36cc$%xyER", 3, date));
+        PersonRepository.forFile(path).compact();
+
+        PersonRecord stored = BinaryRegistryFile.find(Path.of(path), "36cc$%xyER");
+        assertEquals(date + ":3", stored.getDemerits());
+    }
+
+    // Test Case 5 - rows longer than 64 KB are stored, read back and found
+    @Test
+    public void testLongRows() throws IOException {
+        String address = "1|" + "Elizabeth Street ".repeat(5000) + "|Melbourne|Victoria|Australia";
+        String person = "36cc$%xyER,Danush,Bala," + address + ",12-11-1989,false";
+        String raw = "56uu$$ddGG,Mia,Chen," + address;
+        Path csv = tempDir.resolve("persons.txt");
+        Path binary = tempDir.resolve("persons.bin");
+        Files.write(csv, List.of(person, raw));
+
+        BinaryRegistryFile.fromCsv(csv, binary);
+
+        assertEquals(List.of(person, raw), BinaryRegistryFile.read(binary).stream().map(PersonRecord::getLine).toList());
+        assertEquals(person, BinaryRegistryFile.find(binary, "36cc$%xyER").getLine());
+    }
+
+    // Test Case 6 - rows stored as raw lines are in the index as well
+    @Test
+    public void testFindRawLine() throws IOException {
+        // a same-day total past what a byte holds is kept as a raw line
+        String heavy = "56uu$$ddGG,Mia,Chen,3|John St|Melbourne|Victoria|Australia,01-01-2006,true,01-01-2024:130";
+        Path csv = tempDir.resolve("persons.txt");
+        Path binary = tempDir.resolve("persons.bin");
+        Files.write(csv, List.of(REGISTRY.get(0), heavy));
+        BinaryRegistryFile.fromCsv(csv, binary);
+
+        assertEquals(heavy, BinaryRegistryFile.find(binary, "56uu$$ddGG").getLine());
+    }
+
+    // Test Case 7 - after a start the repository answers lookups through the index, without
+    // loading the rows, until the registry is changed
+    @Test
+    public void testRepositoryFindsThroughIndex() throws IOException {
+        Path csv = tempDir.resolve("persons.txt");
+        String path = tempDir.resolve("registry.bin").toString();
+        Files.write(csv, REGISTRY);
+        BinaryRegistryFile.fromCsv(csv, Path.of(path));
+        RegistryMetrics.enable();
+        long rowsRead = RegistryMetrics.registry().getRowsRead();
+
+        PersonRepository repository = PersonRepository.forFile(path);
+        assertEquals(REGISTRY.get(3), repository.find("22aa!!rrYY").getLine());
+        assertNull(repository.find("99zz$$zzZZ"));
+        assertEquals(rowsRead, RegistryMetrics.registry().getRowsRead());
+
+        Person person = new Person("77zz%%rrLL", "Tom", "Smith", "22|King St|Melbourne|Victoria|Australia", "15-03-1980");
+        person.setFilePath(path);
+        assertTrue(person.addPerson());
+        assertEquals("Tom", repository.find("77zz%%rrLL").getFirstName());
+        RegistryMetrics.disable();
+    }
+}
@@ -0,0 +1,90 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+public class BulkImporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private BulkImporter importer(Path registry) {
+        return new BulkImporter(registry.toString(), tempDir.resolve("error_log.txt").toString(), ForkJoinPool.commonPool());
+    }
+
+    // Test Case 1 - valid rows are added, invalid and duplicate rows are rejected with a reason
+    @Test
+    public void testImportMixedRows() throws IOException {
+        Path registry = tempDir.resolve("persons.txt");
+        Files.write(registry, List.of("36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false"));
+
+        Path rows = tempDir.resolve("import.txt");
+        Files.write(rows, List.of(
+                "77zz%%rrLL,Tom,Smith,22|King St|Melbourne|Victoria|Australia,15-03-2001,false",
+                "36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false",
+                "77zz%%rrLL,Tom,Smith,22|King St|Melbourne|Victoria|Australia,15-03-2001,false",
+                "1245,Pasan,Wije,123A|La Trobe St|Melbourne|Victoria|Australia,15-11-1995,false",
+                "45u_d%&fAB,Bruce,Lee,34|Church Road|Melbourne|NSW|Australia,20-12-2000,false",
+                "67z_z&hGTT,Liam,Jones,10|Collins St|Melbourne|Victoria|Australia,2000-01-01,false",
+                "not,enough,fields",
+                "",
+                "22aa!!rrYY,Nina,Brown,55|Bourke St|Melbourne|Victoria|Australia,15-04-2000,false"));
+
+        BulkImporter.Report report = importer(registry).importFile(rows);
+
+        assertEquals(8, report.rows());
+        assertEquals(2, report.accepted());
+        assertEquals(6, report.rejected());
+        assertEquals(2, report.failures().get(ValidationFailure.DUPLICATE_RECORD));
+        assertEquals(1, report.failures().get(ValidationFailure.ADDRESS_STATE));
+        assertEquals(1, report.failures().get(ValidationFailure.RECORD_FORMAT));
+
+        PersonRepository repository = PersonRepository.forFile(registry.toString());
+        assertEquals(3, repository.size());
+        assertNotNull(repository.find("22aa!!rrYY"));
+        ErrorLog.forFile(tempDir.resolve("error_log.txt").toString()).flush();
+        assertEquals(6, Files.readAllLines(tempDir.resolve("error_log.txt")).size());
+    }
+
+    // Test Case 2 - a large import keeps the order of the rows
+    @Test
+    public void testLargeImportKeepsOrder() throws IOException {
+        Path registry = tempDir.resolve("persons.txt");
+        List<String> rows = new ArrayList<>();
+        for (int n = 0; n < 50_000; n++) {
+            String id = String.format("%d%d%04d$#AB", 2 + n % 8, 2 + (n / 8) % 8, n / 64);
+            rows.add(id + ",First,Last,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false");
+        }
+
+        BulkImporter.Report report = importer(registry).importRows(rows);
+        assertEquals(50_000, report.accepted());
+
+        PersonRepository repository = PersonRepository.forFile(registry.toString());
+        for (int i = 0; i < rows.size(); i += 997) {
+            assertEquals(rows.get(i), repository.get(i).getLine());
+        }
+    }
+
+    // Test Case 3 - every accepted row publishes a PERSON_ADDED event, in the order of the rows
+    @Test
+    public void testImportPublishesEvents() throws IOException {
+        Path registry = tempDir.resolve("persons.txt");
+        List<String> rows = List.of(
+                "77zz%%rrLL,Tom,Smith,22|King St|Melbourne|Victoria|Australia,15-03-2001,false",
+                "45u_d%&fAB,Bruce,Lee,34|Church Road|Melbourne|NSW|Australia,20-12-2000,false",
+                "22aa!!rrYY,Nina,Brown,55|Bourke St|Melbourne|Victoria|Australia,15-04-2000,false");
+
+        assertEquals(2, importer(registry).importRows(rows).accepted());
+
+        List<RegistryEvent> events = RegistryEvents.forFile(registry.toString()).read(1, 100);
+        assertEquals(List.of(RegistryEvent.Type.PERSON_ADDED, RegistryEvent.Type.PERSON_ADDED),
+                events.stream().map(RegistryEvent::type).toList());
+        assertEquals(List.of("77zz%%rrLL", "22aa!!rrYY"), events.stream().map(RegistryEvent::personID).toList());
+        assertEquals(rows.get(2), events.get(1).record());
+    }
+}
@@ -0,0 +1,85 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+public class DemeritBatchTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static String recent(int monthsAgo) {
+        return LocalDate.now().minusMonths(monthsAgo).format(DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+    }
+
+    // Test Case 1 - every line gets a result and invalid lines are reported as failed
+    @Test
+    public void testReportPerRecord() throws IOException {
+        Path registry = tempDir.resolve("persons.txt");
+        Files.write(registry, List.of("36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false"));
+
+        String feed = String.join("\n",
+                "36cc$%xyER,3," + recent(2),
+                "36cc$%xyER,8," + recent(2),
+                "36cc$%xyER,2,2024/06/01",
+                "unknownID,3," + recent(2),
+                "",
+                "36cc$%xyER,4," + recent(1));
+        List<DemeritBatch.Result> results = new DemeritBatch(registry.toString()).process(new StringReader(feed));
+
+        assertEquals(5, results.size());
+        assertEquals("Success", results.get(0).status());
+        assertEquals("Failed", results.get(1).status());
+        assertEquals("Failed", results.get(2).status());
+        assertEquals("Failed", results.get(3).status());
+        assertEquals("Success", results.get(4).status());
+        assertEquals(6, results.get(4).lineNumber());
+
+        PersonRecord record = PersonRepository.forFile(registry.toString()).find("36cc$%xyER");
+        assertEquals(2, record.getDemerits().split(";").length);
+    }
+
+    // Test Case 2 - suspension is decided on the total of all offences in the batch
+    @Test
+    public void testSuspensionRecalculatedOncePerPerson() throws IOException {
+        Path registry = tempDir.resolve("persons.txt");
+        Files.write(registry, List.of(
+                "56uu$$ddGG,Mia,Chen,3|John St|Melbourne|Victoria|Australia," + LocalDate.now().minusYears(19).format(DateTimeFormatter.ofPattern("dd-MM-yyyy")) + ",false",
+                "77zz%%rrLL,Tom,Smith,22|King St|Melbourne|Victoria|Australia,15-03-1980,false"));
+
+        String feed = String.join("\n",
+                "56uu$$ddGG,4," + recent(1),
+                "77zz%%rrLL,4," + recent(1),
+                "56uu$$ddGG,3," + recent(2));
+        new DemeritBatch(registry.toString()).process(new StringReader(feed));
+
+        // the whole registry is written back once at the end of the batch
+        List<String> lines = Files.readAllLines(registry);
+        assertTrue(lines.get(0).contains(",true,"));
+        assertTrue(lines.get(1).contains(",false,"));
+    }
+
+    // Test Case 3 - offences for a record that cannot be read are failed and not in the ledger
+    @Test
+    public void testUnreadableRecordLeavesLedgerAlone() throws IOException {
+        Path registry = tempDir.resolve("persons.txt");
+        Files.write(registry, List.of(
+                "36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false,01-01-2024:many",
+                "56uu$$ddGG,Mia,Chen,3|John St|Melbourne|Victoria|Australia,01-01-1990,false"));
+
+        String feed = "36cc$%xyER,3," + recent(1) + "\n56uu$$ddGG,2," + recent(1);
+        List<DemeritBatch.Result> results = new DemeritBatch(registry.toString()).process(new StringReader(feed));
+
+        assertEquals("Failed", results.get(0).status());
+        assertEquals("Success", results.get(1).status());
+        DemeritLedger ledger = DemeritLedger.forFile(registry.toString());
+        assertEquals(0, ledger.points("36cc$%xyER", LocalDate.MIN, LocalDate.MAX));
+        assertEquals(2, ledger.points("56uu$$ddGG", LocalDate.MIN, LocalDate.MAX));
+    }
+}
@@ -0,0 +1,67 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.time.LocalDate;
+
+public class DemeritHistoryTest {
+
+    // Test Case 1 - the history is written back sorted by date whatever the input order
+    @Test
+    public void testFormatIsSortedByDate() {
+        DemeritHistory history = DemeritHistory.parse("01-04-2024:4;01-01-2024:6;01-03-2024:6");
+        assertEquals("01-01-2024:6;01-03-2024:6;01-04-2024:4", history.format());
+        assertEquals(3, history.size());
+    }
+
+    // Test Case 2 - a second offence on the same date replaces the first one
+    @Test
+    public void testPutReplacesSameDate() {
+        DemeritHistory history = DemeritHistory.parse("01-01-2024:3");
+        history.put(LocalDate.of(2024, 1, 1), 5);
+        history.put(LocalDate.of(2023, 12, 31), 2);
+        assertEquals("31-12-2023:2;01-01-2024:5", history.format());
+    }
+
+    // Test Case 3 - only offences strictly inside the last two years are counted
+    @Test
+    public void testRecentPointsWindow() {
+        LocalDate today = LocalDate.of(2025, 6, 1);
+        DemeritHistory history = new DemeritHistory();
+        history.put(LocalDate.of(2023, 6, 1), 6); // exactly two years ago, not counted
+        history.put(LocalDate.of(2023, 6, 2), 4);
+        history.put(LocalDate.of(2025, 5, 1), 3);
+        history.put(LocalDate.of(2020, 1, 1), 6);
+        assertEquals(7, history.recentPoints(today));
+    }
+
+    // Test Case 4 - empty and malformed histories
+    @Test
+    public void testParseEmptyAndMalformed() {
+        assertEquals(0, DemeritHistory.parse("").size());
+        assertEquals(0, DemeritHistory.parse("  ").size());
+        assertEquals("01-01-2024:3", DemeritHistory.parse("garbage;01-01-2024:3").format());
+        assertThrows(RuntimeException.class, () -> DemeritHistory.parse("2024-01-01:3"));
+    }
+
+    // Test Case 5 - dates are accepted exactly like the dd-MM-yyyy formatter accepts them
+    @Test
+    public void testParseMatchesFormatter() {
+        // the formatter moves the 31st of a short month to its last day
+        assertEquals("29-02-2024:1", DemeritHistory.parse("31-02-2024:1").format());
+        assertThrows(RuntimeException.class, () -> DemeritHistory.parse("32-01-2024:1"));
+    }
+
+    // Test Case 6 - offences on the same date add up, also past what a byte holds
+    @Test
+    public void testAddSumsSameDate() {
+        DemeritHistory history = DemeritHistory.parse("01-01-2024:3");
+        for (int i = 0; i < 30; i++) {
+            history.add(LocalDate.of(2024, 1, 1), 6);
+        }
+        history.add(LocalDate.of(2024, 1, 2), 1);
+        assertEquals("01-01-2024:183;02-01-2024:1", history.format());
+        assertEquals("01-01-2024:183;02-01-2024:1", DemeritHistory.parse(history.format()).format());
+        assertEquals(184, history.recentPoints(LocalDate.of(2025, 1, 1)));
+    }
+}
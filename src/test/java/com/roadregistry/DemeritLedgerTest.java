@@ -0,0 +1,185 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+public class DemeritLedgerTest {
+
+    private static final String ADDRESS = "1|Elizabeth Street|Melbourne|Victoria|Australia";
+    private static final LocalDate TODAY = LocalDate.of(2025, 6, 1);
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    @TempDir
+    Path tempDir;
+
+    private String addPerson(String id) {
+        String path = tempDir.resolve("persons.txt").toString();
+        Person person = new Person(id, "Danush", "Bala", ADDRESS, "12-11-1989");
+        person.setFilePath(path);
+        assertTrue(person.addPerson());
+        return path;
+    }
+
+    // Test Case 1 - two offences on the same day are both kept and both counted
+    @Test
+    public void testSameDayOffencesAddUp() throws IOException {
+        String path = addPerson("36cc$%xyER");
+        Person caller = new Person("36cc$%xyER", "", "", "", "");
+        caller.setFilePath(path);
+
+        LocalDate day = LocalDate.now().minusMonths(3);
+        String date = day.format(FORMATTER);
+        assertEquals("Success", caller.addDemeritPoints("36cc$%xyER", 3, date));
+        assertEquals("Success", caller.addDemeritPoints("36cc$%xyER", 4, date));
+        assertEquals("Failed", caller.addDemeritPoints("unknownID", 4, date));
+
+        assertEquals(date + ":7", PersonRepository.forFile(path).find("36cc$%xyER").getDemerits());
+        DemeritLedger ledger = DemeritLedger.forFile(path);
+        List<DemeritLedger.Offence> offences = ledger.offences("36cc$%xyER", day, day);
+        assertEquals(List.of(new DemeritLedger.Offence(day, 3), new DemeritLedger.Offence(day, 4)), offences);
+        assertEquals(0, ledger.points("unknownID", LocalDate.MIN, LocalDate.MAX));
+    }
+
+    // Test Case 2 - range queries include both ends and survive a restart
+    @Test
+    public void testRangeQuery() throws IOException {
+        String path = tempDir.resolve("persons.txt").toString();
+        DemeritLedger ledger = DemeritLedger.forFile(path);
+        ledger.record("36cc$%xyER", LocalDate.of(2024, 3, 1), 2);
+        ledger.record("36cc$%xyER", LocalDate.of(2024, 1, 1), 3);
+        ledger.record("36cc$%xyER", LocalDate.of(2024, 5, 1), 4);
+        ledger.record("56uu$$ddGG", LocalDate.of(2024, 3, 1), 6);
+        DemeritLedger.evict(path);
+
+        DemeritLedger reloaded = DemeritLedger.forFile(path);
+        assertEquals(5, reloaded.points("36cc$%xyER", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 3, 1)));
+        assertEquals(9, reloaded.points("36cc$%xyER", LocalDate.of(2023, 1, 1), LocalDate.of(2025, 1, 1)));
+        assertEquals(LocalDate.of(2024, 1, 1), reloaded.offences("36cc$%xyER", LocalDate.MIN, LocalDate.MAX).get(0).date());
+    }
+
+    // Test Case 3 - an archive moves old offences out of the rows and the hot file into segments
+    @Test
+    public void testArchiveMovesOldOffences() throws IOException {
+        Path registry = tempDir.resolve("persons.txt");
+        // the 2022 offence was stored in the row before there was a ledger
+        Files.write(registry, List.of("36cc$%xyER,Danush,Bala," + ADDRESS + ",12-11-1989,false,01-02-2022:5;01-03-2024:2"));
+        String path = registry.toString();
+        DemeritLedger ledger = DemeritLedger.forFile(path);
+        ledger.record("36cc$%xyER", LocalDate.of(2023, 5, 1), 3);
+        ledger.record("36cc$%xyER", LocalDate.of(2024, 3, 1), 2);
+        ledger.record("56uu$$ddGG", LocalDate.of(2022, 7, 1), 1);
+
+        assertEquals(3, ledger.archive(TODAY, PersonRepository.forFile(path)));
+
+        assertEquals("01-03-2024:2", PersonRepository.forFile(path).find("36cc$%xyER").getDemerits());
+        assertEquals(1, ledger.hotSize());
+        assertTrue(Files.exists(tempDir.resolve("persons.txt.ledger-2022")));
+        assertTrue(Files.exists(tempDir.resolve("persons.txt.ledger-2023")));
+
+        DemeritLedger.evict(path);
+        DemeritLedger reloaded = DemeritLedger.forFile(path);
+        assertEquals(10, reloaded.points("36cc$%xyER", LocalDate.of(2000, 1, 1), LocalDate.of(2024, 12, 31)));
+        assertEquals(5, reloaded.points("36cc$%xyER", LocalDate.of(2022, 1, 1), LocalDate.of(2022, 12, 31)));
+        assertEquals(1, reloaded.points("56uu$$ddGG", LocalDate.of(2022, 1, 1), LocalDate.of(2022, 12, 31)));
+
+        // a second archive adds to the existing segment of the year
+        reloaded.record("56uu$$ddGG", LocalDate.of(2022, 8, 1), 2);
+        assertEquals(1, reloaded.archive(TODAY));
+        assertEquals(3, reloaded.points("56uu$$ddGG", LocalDate.of(2022, 1, 1), LocalDate.of(2022, 12, 31)));
+    }
+
+    // Test Case 4 - entries already archived are not counted twice if the hot file was not rewritten
+    @Test
+    public void testArchiveInterruptedBeforeHotRewrite() throws IOException {
+        String path = tempDir.resolve("persons.txt").toString();
+        DemeritLedger ledger = DemeritLedger.forFile(path);
+        ledger.record("36cc$%xyER", LocalDate.of(2022, 5, 1), 3);
+        ledger.record("36cc$%xyER", LocalDate.of(2024, 5, 1), 4);
+        Path hotFile = Path.of(path + ".ledger");
+        byte[] beforeArchive = Files.readAllBytes(hotFile);
+
+        ledger.archive(TODAY);
+        DemeritLedger.evict(path);
+        // as if the program stopped after the segment was written but before the hot file was
+        Files.write(hotFile, beforeArchive);
+
+        DemeritLedger reloaded = DemeritLedger.forFile(path);
+        assertEquals(7, reloaded.points("36cc$%xyER", LocalDate.of(2020, 1, 1), LocalDate.of(2025, 1, 1)));
+        assertEquals(1, reloaded.hotSize());
+    }
+
+    // Test Case 5 - an archive keeps the part of a same-day total from before the ledger
+    @Test
+    public void testArchiveKeepsPartOfSameDayTotal() throws IOException {
+        Path registry = tempDir.resolve("persons.txt");
+        // the row had 2 points on that day before the ledger, then a 3 point offence was recorded
+        Files.write(registry, List.of("36cc$%xyER,Danush,Bala," + ADDRESS + ",12-11-1989,false,01-02-2022:5"));
+        String path = registry.toString();
+        DemeritLedger ledger = DemeritLedger.forFile(path);
+        ledger.record("36cc$%xyER", LocalDate.of(2022, 2, 1), 3);
+
+        ledger.archive(TODAY, PersonRepository.forFile(path));
+
+        assertEquals("", PersonRepository.forFile(path).find("36cc$%xyER").getDemerits());
+        assertEquals(5, ledger.points("36cc$%xyER", LocalDate.of(2022, 2, 1), LocalDate.of(2022, 2, 1)));
+        // a second archive finds nothing left to add
+        ledger.archive(TODAY, PersonRepository.forFile(path));
+        assertEquals(5, ledger.points("36cc$%xyER", LocalDate.MIN, LocalDate.MAX));
+    }
+
+    // Test Case 6 - a new offence takes the expired offences out of the row into the ledger
+    @Test
+    public void testOffenceMovesExpiredHistoryOutOfRow() throws IOException {
+        Path registry = tempDir.resolve("persons.txt");
+        String old = LocalDate.now().minusYears(3).format(FORMATTER);
+        String recent = LocalDate.now().minusMonths(1).format(FORMATTER);
+        Files.write(registry, List.of("36cc$%xyER,Danush,Bala," + ADDRESS + ",12-11-1989,false," + old + ":9;" + recent + ":2"));
+        String path = registry.toString();
+        Person caller = new Person("36cc$%xyER", "", "", "", "");
+        caller.setFilePath(path);
+
+        assertEquals("Success", caller.addDemeritPoints("36cc$%xyER", 4, recent));
+        // an offence that is already outside the window only goes to the ledger
+        assertEquals("Success", caller.addDemeritPoints("36cc$%xyER", 1, old));
+
+        assertEquals(recent + ":6", PersonRepository.forFile(path).find("36cc$%xyER").getDemerits());
+        DemeritLedger ledger = DemeritLedger.forFile(path);
+        LocalDate oldDay = LocalDate.now().minusYears(3);
+        assertEquals(10, ledger.points("36cc$%xyER", oldDay, oldDay));
+        assertEquals(14, ledger.points("36cc$%xyER", LocalDate.MIN, LocalDate.MAX));
+    }
+
+    // Test Case 7 - a ledger that cannot be written does not fail an offence stored in the row, in
+    // memory or streamed, and the offence reaches the ledger once it works again
+    @Test
+    public void testUnwritableLedgerKeepsStoredOffence() throws IOException {
+        String date = LocalDate.now().minusMonths(1).format(FORMATTER);
+        for (boolean streaming : new boolean[] {false, true}) {
+            Path registry = tempDir.resolve(streaming + ".txt");
+            Files.write(registry, List.of("36cc$%xyER,Danush,Bala," + ADDRESS + ",12-11-1989,false"));
+            String path = registry.toString();
+            // a directory where the hot file should be makes reading and writing it fail
+            Path hotFile = Path.of(path + ".ledger");
+            Files.createDirectory(hotFile);
+            long failures = RegistryMetrics.registry().getLedgerWriteFailures();
+
+            Person caller = new Person("36cc$%xyER", "", "", "", "");
+            caller.setFilePath(path);
+            caller.setStreaming(streaming);
+            assertEquals("Success", caller.addDemeritPoints("36cc$%xyER", 3, date));
+            assertEquals(date + ":3", caller.lookup("36cc$%xyER").getDemerits());
+            assertTrue(RegistryMetrics.registry().getLedgerWriteFailures() > failures);
+
+            Files.delete(hotFile);
+            assertEquals("Success", caller.addDemeritPoints("36cc$%xyER", 2, date));
+            DemeritLedger.evict(path);
+            assertEquals(5, DemeritLedger.forFile(path).points("36cc$%xyER", LocalDate.MIN, LocalDate.MAX));
+        }
+    }
+}
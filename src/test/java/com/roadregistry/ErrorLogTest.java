@@ -0,0 +1,68 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class ErrorLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    // Test Case 1 - logged entries are written as "timestamp,REASON,record" once flushed
+    @Test
+    public void testFlushWritesEntries() throws Exception {
+        Path file = tempDir.resolve("error_log.txt");
+        ErrorLog log = ErrorLog.forFile(file.toString());
+
+        log.log(ValidationFailure.ID_PREFIX, "1245,Pasan,Wije");
+        log.log(ValidationFailure.DATE_FORMAT, "67z_z&hGTT,Liam,Jones");
+        log.flush();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).endsWith(",ID_PREFIX,1245,Pasan,Wije"));
+        assertTrue(lines.get(1).endsWith(",DATE_FORMAT,67z_z&hGTT,Liam,Jones"));
+    }
+
+    // Test Case 2 - many entries from several threads all reach the file
+    @Test
+    public void testConcurrentLogging() throws Exception {
+        Path file = tempDir.resolve("concurrent_log.txt");
+        ErrorLog log = ErrorLog.forFile(file.toString());
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int thread = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    log.log(ValidationFailure.ADDRESS_STATE, thread + "-" + i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        log.flush();
+
+        assertEquals(20_000, Files.readAllLines(file).size());
+    }
+
+    // Test Case 3 - repeats within the deduplication window are dropped
+    @Test
+    public void testDeduplicationWindow() throws Exception {
+        Path file = tempDir.resolve("dedup_log.txt");
+        ErrorLog log = ErrorLog.forFile(file.toString());
+        log.setDeduplicationWindow(60_000);
+
+        log.log(ValidationFailure.DUPLICATE_RECORD, "36cc$%xyER,Danush,Bala");
+        log.log(ValidationFailure.DUPLICATE_RECORD, "36cc$%xyER,Danush,Bala");
+        log.log(ValidationFailure.ID_PREFIX, "36cc$%xyER,Danush,Bala");
+        log.flush();
+
+        assertEquals(2, Files.readAllLines(file).size());
+    }
+}
@@ -0,0 +1,61 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+public class MappedPersonFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path writeRegistry(String content) throws IOException {
+        Path file = tempDir.resolve("persons.txt");
+        Files.writeString(file, content);
+        return file;
+    }
+
+    // Test Case 1 - the row with the matching ID is found, IDs that only share a prefix are not
+    @Test
+    public void testFindMatchesWholeID() throws IOException {
+        Path file = writeRegistry(
+                "36cc$%xyERX,Wrong,Person,1|A St|Melbourne|Victoria|Australia,12-11-1989,false\n"
+                + "\n"
+                + "  36cc$%xyER ,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false\r\n"
+                + "56uu$$ddGG,Mia,Chen,3|John St|Melbourne|Victoria|Australia,01-01-2006,true,01-01-2024:3");
+
+        assertEquals("Danush", MappedPersonFile.find(file, "36cc$%xyER").getFirstName());
+        assertEquals("01-01-2024:3", MappedPersonFile.find(file, "56uu$$ddGG").getDemerits());
+        assertNull(MappedPersonFile.find(file, "36cc$%xy"));
+        assertNull(MappedPersonFile.find(file, "unknownID"));
+    }
+
+    // Test Case 2 - rows crossing the end of a mapped window are read completely
+    @Test
+    public void testRowsAcrossWindows() throws IOException {
+        List<String> lines = List.of(
+                "36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false",
+                "77zz%%rrLL,Tom,Smith,22|King St|Melbourne|Victoria|Australia,15-03-2001,false",
+                "22aa!!rrYY,Nina,Brown,55|Bourke St|Melbourne|Victoria|Australia,15-04-2000,false,01-06-2024:4");
+        Path file = writeRegistry(String.join("\n", lines) + "\n");
+
+        List<String> read = new ArrayList<>();
+        MappedPersonFile.scan(file, null, record -> read.add(record.getLine()), false, 100);
+        assertEquals(lines, read);
+
+        PersonRecord[] found = new PersonRecord[1];
+        MappedPersonFile.scan(file, "22aa!!rrYY".getBytes(StandardCharsets.UTF_8), record -> found[0] = record, true, 100);
+        assertEquals(lines.get(2), found[0].getLine());
+    }
+
+    // Test Case 3 - an empty file has no rows
+    @Test
+    public void testEmptyFile() throws IOException {
+        Path file = writeRegistry("");
+        assertNull(MappedPersonFile.find(file, "36cc$%xyER"));
+    }
+}
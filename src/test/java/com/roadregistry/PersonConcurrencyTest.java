@@ -0,0 +1,119 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class PersonConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int UPDATES_PER_THREAD = 50;
+    private static final String ADDRESS = "1|Elizabeth Street|Melbourne|Victoria|Australia";
+
+    @TempDir
+    Path tempDir;
+
+    // ID of the n-th test person, always a valid ID
+    private static String idOf(int n) {
+        return String.format("3%dxy$%%%02dAB", n % 8 + 2, n);
+    }
+
+    private static void runInParallel(int threads, ThrowingTask task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                task.run(thread);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+    }
+
+    private interface ThrowingTask {
+        void run(int thread) throws Exception;
+    }
+
+    // Test Case 1 - many threads adding demerits to the same person do not lose any offence
+    @Test
+    public void testConcurrentDemeritsOnSamePerson_noLostUpdates() throws Exception {
+        String path = tempDir.resolve("persons.txt").toString();
+        Person person = new Person(idOf(1), "Danush", "Bala", ADDRESS, "12-11-1989");
+        person.setFilePath(path);
+        assertTrue(person.addPerson());
+
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+        runInParallel(THREADS, thread -> {
+            Person caller = new Person(idOf(1), "Danush", "Bala", ADDRESS, "12-11-1989");
+            caller.setFilePath(path);
+            for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                // two offences per day inside the two years a row keeps, so the same-day totals are racing too
+                String date = LocalDate.now().minusDays((thread * UPDATES_PER_THREAD + i) / 2).format(formatter);
+                assertEquals("Success", caller.addDemeritPoints(idOf(1), 1, date));
+            }
+        });
+
+        PersonRecord record = PersonRepository.forFile(path).find(idOf(1));
+        assertEquals(THREADS * UPDATES_PER_THREAD / 2, record.getDemerits().split(";").length);
+        assertEquals(THREADS * UPDATES_PER_THREAD, DemeritHistory.parse(record.getDemerits()).recentPoints(LocalDate.now()));
+        assertEquals(THREADS * UPDATES_PER_THREAD, DemeritLedger.forFile(path).offences(idOf(1), LocalDate.MIN, LocalDate.MAX).size());
+    }
+
+    // Test Case 2 - people updated by different threads all keep their own changes
+    @Test
+    public void testConcurrentUpdatesOnDifferentPeople_noLostUpdates() throws Exception {
+        String path = tempDir.resolve("persons.txt").toString();
+        for (int n = 0; n < THREADS; n++) {
+            Person person = new Person(idOf(n), "First" + n, "Last", ADDRESS, "12-11-1989");
+            person.setFilePath(path);
+            assertTrue(person.addPerson());
+        }
+
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+        runInParallel(THREADS, thread -> {
+            for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                Person rename = new Person(idOf(thread), "First" + thread, "Last" + i, ADDRESS, "12-11-1989");
+                rename.setFilePath(path);
+                assertTrue(rename.updatePersonalDetails());
+
+                String date = LocalDate.now().minusDays(i).format(formatter);
+                assertEquals("Success", rename.addDemeritPoints(idOf(thread), 1, date));
+            }
+        });
+
+        PersonRepository repository = PersonRepository.forFile(path);
+        assertEquals(THREADS, repository.size());
+        for (int n = 0; n < THREADS; n++) {
+            PersonRecord record = repository.find(idOf(n));
+            assertEquals("Last" + (UPDATES_PER_THREAD - 1), record.getLastName());
+            assertEquals(UPDATES_PER_THREAD, record.getDemerits().split(";").length);
+        }
+    }
+
+    // Test Case 3 - two threads racing to add the same person only add it once
+    @Test
+    public void testConcurrentDuplicateAdds_onlyOneSucceeds() throws Exception {
+        String path = tempDir.resolve("persons.txt").toString();
+        ConcurrentLinkedQueue<Boolean> outcomes = new ConcurrentLinkedQueue<>();
+        runInParallel(THREADS, thread -> {
+            Person person = new Person(idOf(7), "Mia", "Chen", ADDRESS, "01-01-2006");
+            person.setFilePath(path);
+            outcomes.add(person.addPerson());
+        });
+
+        assertEquals(1, outcomes.stream().filter(added -> added).count());
+        assertEquals(1, PersonRepository.forFile(path).size());
+    }
+}
@@ -0,0 +1,183 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.List;
+
+public class PersonRepositoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String writeRegistry(String... lines) throws IOException {
+        Path file = tempDir.resolve("persons.txt");
+        Files.write(file, List.of(lines));
+        return file.toString();
+    }
+
+    // Test Case 1 - rows are found by ID and duplicates are detected on the full line
+    @Test
+    public void testLookupAndContains() throws IOException {
+        String path = writeRegistry(
+                "36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false",
+                "",
+                "56uu$$ddGG,Mia,Chen,3|John St|Melbourne|Victoria|Australia,01-01-2006,true,01-01-2024:3");
+        PersonRepository repository = PersonRepository.forFile(path);
+
+        assertEquals(2, repository.size());
+        assertEquals("Mia", repository.find("56uu$$ddGG").getFirstName());
+        assertNull(repository.find("unknownID"));
+        assertTrue(repository.contains("36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false"));
+        assertFalse(repository.contains("36cc$%xyER,Danush,Bala,2|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false"));
+    }
+
+    // Test Case 2 - the same path always gives the same repository
+    @Test
+    public void testForFileIsShared() throws IOException {
+        String path = writeRegistry();
+        assertSame(PersonRepository.forFile(path), PersonRepository.forFile(path));
+    }
+
+    // Test Case 3 - changing the ID of a row moves it in the index
+    @Test
+    public void testSetReindexesChangedID() throws IOException {
+        String path = writeRegistry("35cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false");
+        PersonRepository repository = PersonRepository.forFile(path);
+
+        int row = repository.rowsOf("35cc$%xyER")[0];
+        repository.set(row, PersonRecord.of("47cc$%xyER", "Danush", "Bala", "1|Elizabeth Street|Melbourne|Victoria|Australia", "12-11-1989", "false", ""));
+
+        assertEquals(0, repository.rowsOf("35cc$%xyER").length);
+        assertEquals(1, repository.rowsOf("47cc$%xyER").length);
+    }
+
+    // Test Case 4 - changes made to the file by someone else are picked up
+    @Test
+    public void testReloadsWhenFileChangesOutside() throws IOException {
+        String path = writeRegistry("36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false");
+        PersonRepository repository = PersonRepository.forFile(path);
+        assertEquals(1, repository.size());
+
+        new FileWriter(path, false).close();
+        assertEquals(0, repository.size());
+        assertNull(repository.find("36cc$%xyER"));
+    }
+
+    // Test Case 5 - changes go to the write-ahead log and are recovered after a restart
+    @Test
+    public void testLogIsReplayedOnLoad() throws IOException {
+        String path = writeRegistry("36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false");
+        PersonRepository repository = PersonRepository.forFile(path);
+        repository.append(PersonRecord.parse("77zz%%rrLL,Tom,Smith,22|King St|Melbourne|Victoria|Australia,15-03-2001,false"));
+        repository.set(0, PersonRecord.parse("36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,true,01-01-2024:6"));
+
+        // the registry file itself is untouched until the log is compacted
+        assertEquals(1, Files.readAllLines(Path.of(path)).size());
+        assertTrue(Files.exists(Path.of(path + ".wal")));
+
+        PersonRepository.evict(path);
+        PersonRepository reopened = PersonRepository.forFile(path);
+        assertEquals(2, reopened.size());
+        assertTrue(reopened.find("36cc$%xyER").isSuspended());
+        assertEquals("Tom", reopened.find("77zz%%rrLL").getFirstName());
+    }
+
+    // Test Case 6 - compaction folds the log into the registry file
+    @Test
+    public void testCompactRewritesFileAndDropsLog() throws IOException {
+        String path = writeRegistry("36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false");
+        PersonRepository repository = PersonRepository.forFile(path);
+        repository.append(PersonRecord.parse("77zz%%rrLL,Tom,Smith,22|King St|Melbourne|Victoria|Australia,15-03-2001,false"));
+        repository.compact();
+
+        assertFalse(Files.exists(Path.of(path + ".wal")));
+        assertEquals(List.of(
+                "36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false",
+                "77zz%%rrLL,Tom,Smith,22|King St|Melbourne|Victoria|Australia,15-03-2001,false"),
+                Files.readAllLines(Path.of(path)));
+    }
+
+    // Test Case 7 - a damaged record at the end of the log is ignored
+    @Test
+    public void testTornLogRecordIsIgnored() throws IOException {
+        String path = writeRegistry("36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false");
+        PersonRepository repository = PersonRepository.forFile(path);
+        repository.append(PersonRecord.parse("77zz%%rrLL,Tom,Smith,22|King St|Melbourne|Victoria|Australia,15-03-2001,false"));
+        PersonRepository.evict(path);
+
+        Files.writeString(Path.of(path + ".wal"), "A,1234,22aa!!rrYY,Nina", StandardOpenOption.APPEND);
+        PersonRepository reopened = PersonRepository.forFile(path);
+        assertEquals(2, reopened.size());
+        assertNull(reopened.find("22aa!!rrYY"));
+    }
+
+    // Test Case 8 - removed rows keep their position until compaction, which drops them
+    @Test
+    public void testRemoveIsLoggedAndCompacted() throws IOException {
+        String path = writeRegistry(
+                "36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false",
+                "77zz%%rrLL,Tom,Smith,22|King St|Melbourne|Victoria|Australia,15-03-2001,false");
+        PersonRepository repository = PersonRepository.forFile(path);
+        repository.remove(0);
+
+        assertNull(repository.get(0));
+        assertNull(repository.find("36cc$%xyER"));
+        assertEquals(1, repository.rowsOf("77zz%%rrLL")[0]);
+
+        // the removal is replayed from the log after a restart
+        PersonRepository.evict(path);
+        PersonRepository reopened = PersonRepository.forFile(path);
+        assertNull(reopened.find("36cc$%xyER"));
+        assertEquals("Tom", reopened.get(1).getFirstName());
+
+        reopened.compact();
+        assertEquals(1, reopened.size());
+        assertEquals(0, reopened.rowsOf("77zz%%rrLL")[0]);
+        assertEquals(List.of("77zz%%rrLL,Tom,Smith,22|King St|Melbourne|Victoria|Australia,15-03-2001,false"), Files.readAllLines(Path.of(path)));
+    }
+
+    // Test Case 9 - a log written against another version of the file is kept and loading fails,
+    // instead of dropping changes that were already reported as done
+    @Test
+    public void testLogForReplacedFileIsKept() throws IOException {
+        String path = writeRegistry("36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false");
+        PersonRepository repository = PersonRepository.forFile(path);
+        repository.append(PersonRecord.parse("77zz%%rrLL,Tom,Smith,22|King St|Melbourne|Victoria|Australia,15-03-2001,false"));
+        PersonRepository.evict(path);
+
+        Files.write(Path.of(path), List.of("56uu$$ddGG,Mia,Chen,3|John St|Melbourne|Victoria|Australia,01-01-2006,false"));
+        PersonRepository reopened = PersonRepository.forFile(path);
+        assertThrows(IOException.class, reopened::size);
+        assertThrows(IOException.class, () -> reopened.find("56uu$$ddGG"));
+        assertTrue(Files.exists(Path.of(path + ".wal")));
+
+        // once the log is moved away the file loads as it is
+        Files.move(Path.of(path + ".wal"), Path.of(path + ".wal.checked"));
+        assertEquals(1, reopened.size());
+    }
+
+    // Test Case 10 - a log left behind by a compaction that stopped before deleting it is dropped
+    @Test
+    public void testLogFoldedByCompactionIsDropped() throws IOException {
+        String path = writeRegistry("36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false");
+        PersonRepository repository = PersonRepository.forFile(path);
+        repository.append(PersonRecord.parse("77zz%%rrLL,Tom,Smith,22|King St|Melbourne|Victoria|Australia,15-03-2001,false"));
+        PersonRepository.evict(path);
+        byte[] log = Files.readAllBytes(Path.of(path + ".wal"));
+
+        PersonRepository compacted = PersonRepository.forFile(path);
+        compacted.compact();
+        PersonRepository.evict(path);
+        // as if the program stopped after the new file was moved into place, with the log marked
+        File file = new File(path);
+        Files.write(Path.of(path + ".wal"), log);
+        Files.writeString(Path.of(path + ".wal"), "\n#compacted," + file.length() + "," + file.lastModified() + "\n", StandardOpenOption.APPEND);
+
+        PersonRepository reopened = PersonRepository.forFile(path);
+        assertEquals(2, reopened.size());
+        assertFalse(Files.exists(Path.of(path + ".wal")));
+    }
+}
@@ -0,0 +1,80 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.Random;
+
+public class PersonValidatorTest {
+
+    // The regular expression checks the validator replaces, used as the reference
+    private static boolean regexID(String id) {
+        if (id == null || id.length() != 10) return false;
+        if (!id.substring(0, 2).matches("[2-9]{2}")) return false;
+        if (!id.substring(8).matches("[A-Z]{2}")) return false;
+        int specialCount = 0;
+        for (char c : id.substring(2, 8).toCharArray()) {
+            if (!Character.isLetterOrDigit(c)) specialCount++;
+        }
+        return specialCount >= 2;
+    }
+
+    private static boolean regexAddress(String address) {
+        return address.matches("\\d+\\|[^|]+\\|[^|]+\\|Victoria\\|[^|]+");
+    }
+
+    private static boolean regexDate(String date) {
+        return date.matches("\\d{2}-\\d{2}-\\d{4}");
+    }
+
+    // Random strings made of the characters that matter to the checks
+    private static String randomString(Random random, String alphabet, int maxLength) {
+        StringBuilder result = new StringBuilder();
+        int length = random.nextInt(maxLength + 1);
+        for (int i = 0; i < length; i++) {
+            result.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return result.toString();
+    }
+
+    // Test Case 1 - reasons for rejected IDs
+    @Test
+    public void testIDReasons() {
+        assertNull(PersonValidator.checkID("56s_d%&fAB"));
+        assertEquals(ValidationFailure.ID_LENGTH, PersonValidator.checkID("1245"));
+        assertEquals(ValidationFailure.ID_LENGTH, PersonValidator.checkID(null));
+        assertEquals(ValidationFailure.ID_PREFIX, PersonValidator.checkID("16s_d%&fAB"));
+        assertEquals(ValidationFailure.ID_SUFFIX, PersonValidator.checkID("56s_d%&fAb"));
+        assertEquals(ValidationFailure.ID_SPECIAL_CHARACTERS, PersonValidator.checkID("56sddd&fAB"));
+    }
+
+    // Test Case 2 - reasons for rejected addresses and dates
+    @Test
+    public void testAddressAndDateReasons() {
+        assertNull(PersonValidator.checkAddress("32|Highland Street|Melbourne|Victoria|Australia"));
+        assertEquals(ValidationFailure.ADDRESS_STATE, PersonValidator.checkAddress("34|Church Road|Melbourne|NSW|Australia"));
+        assertEquals(ValidationFailure.ADDRESS_FORMAT, PersonValidator.checkAddress("34A|Church Road|Melbourne|Victoria|Australia"));
+        assertEquals(ValidationFailure.ADDRESS_FORMAT, PersonValidator.checkAddress("34|Church Road|Melbourne|Victoria"));
+        assertEquals(ValidationFailure.ADDRESS_FORMAT, PersonValidator.checkAddress("34||Melbourne|Victoria|Australia"));
+        assertNull(PersonValidator.checkDate("15-11-1990"));
+        assertEquals(ValidationFailure.DATE_FORMAT, PersonValidator.checkDate("2000-01-01"));
+    }
+
+    // Test Case 3 - the validator accepts and rejects exactly what the regular expressions did
+    @Test
+    public void testSameResultsAsRegularExpressions() {
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            String id = randomString(random, "0129AZa_%$é", 11);
+            assertEquals(regexID(id), PersonValidator.isValidID(id), id);
+
+            String address = randomString(random, "09|aV", 12);
+            if (random.nextInt(4) == 0) {
+                address = random.nextInt(100) + "|" + randomString(random, "a|\n", 3) + "|x|Victoria|" + randomString(random, "a|", 2);
+            }
+            assertEquals(regexAddress(address), PersonValidator.isValidAddress(address), address);
+
+            String date = randomString(random, "09-٣", 11);
+            assertEquals(regexDate(date), PersonValidator.isValidDate(date), date);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class RegistryEventsTest {
+
+    private static final String ADDRESS = "1|Elizabeth Street|Melbourne|Victoria|Australia";
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    @TempDir
+    Path tempDir;
+
+    private String path() {
+        return tempDir.resolve("persons.txt").toString();
+    }
+
+    private void addPeople(String path, int from, int to) {
+        for (int i = from; i < to; i++) {
+            Person person = new Person(String.format("56%02d$$ddGG", i), "Mia", "Chen", ADDRESS, "01-01-1990");
+            person.setFilePath(path);
+            assertTrue(person.addPerson());
+        }
+    }
+
+    private static List<Long> sequences(List<RegistryEvent> events) {
+        return events.stream().map(RegistryEvent::sequence).toList();
+    }
+
+    // Test Case 1 - each change publishes a typed event with the new row, in order
+    @Test
+    public void testChangesPublishEvents() throws IOException {
+        String path = path();
+        Person person = new Person("36cc$%xyER", "Danush", "Bala", ADDRESS, "12-11-1989");
+        person.setFilePath(path);
+        assertTrue(person.addPerson());
+
+        Person renamed = new Person("38cc$%xyER", "Danush", "Bala", ADDRESS, "12-11-1989");
+        renamed.setOldPersonID("36cc$%xyER");
+        renamed.setFilePath(path);
+        assertTrue(renamed.updatePersonalDetails());
+
+        String date = LocalDate.now().minusDays(10).format(FORMATTER);
+        assertEquals("Success", renamed.addDemeritPoints("38cc$%xyER", 6, date));
+        assertEquals("Success", renamed.addDemeritPoints("38cc$%xyER", 6, date));
+        assertEquals("Success", renamed.addDemeritPoints("38cc$%xyER", 1, date));
+        assertEquals("Failed", renamed.addDemeritPoints("unknownID", 1, date));
+
+        List<RegistryEvent> events = RegistryEvents.forFile(path).read(1, 100);
+        assertEquals(List.of(RegistryEvent.Type.PERSON_ADDED, RegistryEvent.Type.PERSON_UPDATED,
+                RegistryEvent.Type.DEMERITS_ADDED, RegistryEvent.Type.DEMERITS_ADDED,
+                RegistryEvent.Type.DEMERITS_ADDED, RegistryEvent.Type.SUSPENDED),
+                events.stream().map(RegistryEvent::type).toList());
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), sequences(events));
+
+        assertEquals("36cc$%xyER", events.get(0).personID());
+        assertNull(events.get(0).previousPersonID());
+        assertEquals("38cc$%xyER", events.get(1).personID());
+        assertEquals("36cc$%xyER", events.get(1).previousPersonID());
+        assertEquals(date + ":1", events.get(4).detail());
+        assertEquals(PersonRepository.forFile(path).find("38cc$%xyER").getLine(), events.get(5).record());
+    }
+
+    // Test Case 2 - a consumer resumes from an offset after a restart and numbering goes on
+    @Test
+    public void testResumeAfterRestart() throws IOException {
+        String path = path();
+        addPeople(path, 0, 5);
+        RegistryEvents.evict(path);
+
+        RegistryEvents events = RegistryEvents.forFile(path);
+        assertEquals(5, events.lastSequence());
+        assertEquals(List.of(4L, 5L), sequences(events.read(4, 100)));
+        assertEquals(List.of(2L, 3L), sequences(events.read(2, 2)));
+        assertTrue(events.read(6, 100).isEmpty());
+
+        addPeople(path, 5, 6);
+        assertEquals(List.of(6L), sequences(events.read(6, 100)));
+        assertEquals("5605$$ddGG", events.read(6, 1).get(0).personID());
+    }
+
+    // Test Case 3 - a slow subscriber gets every event in order and does not hold up the writer
+    @Test
+    public void testSlowSubscriberCatchesUp() throws Exception {
+        String path = path();
+        RegistryEvents events = RegistryEvents.forFile(path);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch allReceived = new CountDownLatch(50);
+        List<Long> received = new CopyOnWriteArrayList<>();
+        RegistryEvents.Subscription subscription = events.subscribe(1, 2, event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            received.add(event.sequence());
+            allReceived.countDown();
+        });
+
+        // far more events than the queue holds, while the subscriber is stuck on the first one
+        addPeople(path, 0, 50);
+        assertTrue(received.isEmpty());
+        release.countDown();
+
+        assertTrue(allReceived.await(10, TimeUnit.SECONDS));
+        // the position moves on once the consumer returns from the last event
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (subscription.position() < 51 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        subscription.close();
+        assertEquals(50, received.size());
+        for (int i = 0; i < received.size(); i++) {
+            assertEquals(i + 1, received.get(i));
+        }
+        assertEquals(51, subscription.position());
+    }
+
+    // Test Case 4 - subscribing from an old offset replays the log before the new events
+    @Test
+    public void testSubscribeReplaysHistory() throws Exception {
+        String path = path();
+        addPeople(path, 0, 3);
+        BlockingQueue<RegistryEvent> received = new LinkedBlockingQueue<>();
+        RegistryEvents.Subscription subscription = RegistryEvents.forFile(path).subscribe(2, 16, received::add);
+
+        addPeople(path, 3, 4);
+        for (long sequence = 2; sequence <= 4; sequence++) {
+            RegistryEvent event = received.poll(10, TimeUnit.SECONDS);
+            assertNotNull(event);
+            assertEquals(sequence, event.sequence());
+        }
+        assertEquals("5603$$ddGG", RegistryEvents.forFile(path).read(4, 1).get(0).personID());
+
+        RegistryEvents.evict(path);
+        assertTrue(subscription.isClosed());
+    }
+
+    // Test Case 5 - racing changes to one person in streaming mode are published in the order
+    // they were made, so every event holds one more offence than the one before
+    @Test
+    public void testStreamingEventsFollowChangeOrder() throws Exception {
+        String path = path();
+        Person person = new Person("36cc$%xyER", "Danush", "Bala", ADDRESS, "12-11-1989");
+        person.setFilePath(path);
+        assertTrue(person.addPerson());
+        PersonRepository.forFile(path).compact();
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<String>> results = new java.util.ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            String date = LocalDate.now().minusDays(i).format(FORMATTER);
+            results.add(pool.submit(() -> {
+                Person caller = new Person("36cc$%xyER", "", "", "", "");
+                caller.setFilePath(path);
+                caller.setStreaming(true);
+                return caller.addDemeritPoints("36cc$%xyER", 1, date);
+            }));
+        }
+        for (Future<String> result : results) {
+            assertEquals("Success", result.get(60, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        // the offences are recent, so the person is also suspended on the way
+        List<RegistryEvent> events = RegistryEvents.forFile(path).read(2, 100).stream()
+                .filter(event -> event.type() == RegistryEvent.Type.DEMERITS_ADDED).toList();
+        assertEquals(40, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            PersonRecord record = PersonRecord.parse(events.get(i).record());
+            assertEquals(i + 1, DemeritHistory.parse(record.getDemerits()).size());
+        }
+    }
+
+    // Test Case 6 - an event log that cannot be written does not fail the change, and the event
+    // is written in order once the log works again
+    @Test
+    public void testUnwritableLogKeepsEvents() throws IOException {
+        String path = path();
+        Path logFile = Path.of(path + ".events");
+        // a directory where the log should be makes every write fail
+        Files.createDirectory(logFile);
+        long failures = RegistryMetrics.registry().getEventWriteFailures();
+
+        addPeople(path, 0, 1);
+        assertNotNull(PersonRepository.forFile(path).find("5600$$ddGG"));
+        assertTrue(RegistryMetrics.registry().getEventWriteFailures() > failures);
+
+        Files.delete(logFile);
+        addPeople(path, 1, 2);
+        List<RegistryEvent> events = RegistryEvents.forFile(path).read(1, 100);
+        assertEquals(List.of(1L, 2L), sequences(events));
+        assertEquals(List.of("5600$$ddGG", "5601$$ddGG"), events.stream().map(RegistryEvent::personID).toList());
+    }
+
+    // Test Case 7 - the log is rotated into segments and only the newest ones are kept
+    @Test
+    public void testRotationAndRetention() throws IOException {
+        String path = path();
+        RegistryEvents events = RegistryEvents.forFile(path);
+        // every event is larger than a segment, so each one starts a new segment
+        events.setRetention(1, 3);
+        addPeople(path, 0, 10);
+
+        assertEquals(10, events.lastSequence());
+        assertEquals(7, events.firstSequence());
+        assertFalse(Files.exists(Path.of(path + ".events-6")));
+        assertTrue(Files.exists(Path.of(path + ".events-7")));
+        // events that are gone are skipped, the sequence numbers show the gap
+        assertEquals(List.of(7L, 8L, 9L, 10L), sequences(events.read(1, 100)));
+
+        RegistryEvents.evict(path);
+        RegistryEvents reloaded = RegistryEvents.forFile(path);
+        assertEquals(10, reloaded.lastSequence());
+        assertEquals(List.of(8L, 9L), sequences(reloaded.read(8, 2)));
+    }
+}
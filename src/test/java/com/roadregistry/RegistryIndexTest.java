@@ -0,0 +1,77 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+public class RegistryIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static String date(LocalDate date) {
+        return date.format(DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+    }
+
+    private static List<String> ids(List<PersonRecord> records) {
+        List<String> ids = new ArrayList<>();
+        records.forEach(record -> ids.add(record.getPersonID()));
+        return ids;
+    }
+
+    private Path registry() throws IOException {
+        Path registry = tempDir.resolve("persons.txt");
+        String recent = date(LocalDate.now().minusMonths(2));
+        String old = date(LocalDate.now().minusYears(3));
+        Files.write(registry, List.of(
+                "36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1985,true," + recent + ":6;" + date(LocalDate.now().minusMonths(3)) + ":6;" + date(LocalDate.now().minusMonths(4)) + ":2",
+                "56uu$$ddGG,Mia,Chen,3|John St|Geelong|Victoria|Australia," + date(LocalDate.now().minusYears(19)) + ",false," + recent + ":5",
+                "77zz%%rrLL,Tom,Smith,22|King St|melbourne|Victoria|Australia,15-03-1985,false," + old + ":6",
+                "22aa!!rrYY,Nina,Brown,55|Bourke St|Melbourne|Victoria|Australia," + date(LocalDate.now().minusYears(20)) + ",false"));
+        return registry;
+    }
+
+    // Test Case 1 - queries combine the suspension, city, birth year, age and points indexes
+    @Test
+    public void testQueries() throws IOException {
+        RegistryIndex index = RegistryIndex.forFile(registry().toString());
+
+        assertEquals(List.of("36cc$%xyER"), ids(index.query().suspended(true).city("Melbourne").list()));
+        assertEquals(List.of("36cc$%xyER", "77zz%%rrLL", "22aa!!rrYY"), ids(index.query().city("MELBOURNE").list()));
+        assertEquals(List.of("36cc$%xyER", "77zz%%rrLL"), ids(index.query().bornIn(1985).list()));
+        assertEquals(List.of("56uu$$ddGG"), ids(index.query().ageBetween(0, 20).minRecentPoints(5).list()));
+        // points older than two years do not count
+        assertEquals(0, index.query().bornIn(1985).suspended(false).minRecentPoints(1).count());
+        assertEquals(4, index.query().count());
+        assertEquals(0, index.query().city("Ballarat").count());
+    }
+
+    // Test Case 2 - the indexes follow changes made through Person
+    @Test
+    public void testFollowsPersonChanges() throws IOException {
+        Path registry = registry();
+        RegistryIndex index = RegistryIndex.forFile(registry.toString());
+
+        Person person = new Person("45xy$%abCD", "Ava", "Stone", "9|Ocean Ave|Geelong|Victoria|Australia", "01-01-1985");
+        person.setFilePath(registry.toString());
+        assertTrue(person.addPerson());
+        assertEquals(3, index.query().bornIn(1985).count());
+
+        assertEquals("Success", person.addDemeritPoints("45xy$%abCD", 6, date(LocalDate.now().minusDays(10))));
+        assertEquals("Success", person.addDemeritPoints("45xy$%abCD", 6, date(LocalDate.now().minusDays(5))));
+        assertEquals("Success", person.addDemeritPoints("45xy$%abCD", 2, date(LocalDate.now().minusDays(1))));
+        assertEquals(List.of("45xy$%abCD"), ids(index.query().city("Geelong").suspended(true).list()));
+        assertEquals(List.of("36cc$%xyER", "45xy$%abCD"), ids(index.query().minRecentPoints(13).list()));
+
+        Person moved = new Person("45xy$%abCD", "Ava", "Stone", "9|Ocean Ave|Bendigo|Victoria|Australia", "01-01-1985");
+        moved.setFilePath(registry.toString());
+        assertTrue(moved.updatePersonalDetails());
+        assertEquals(0, index.query().city("Geelong").suspended(true).count());
+        assertEquals(1, index.query().city("Bendigo").count());
+    }
+}
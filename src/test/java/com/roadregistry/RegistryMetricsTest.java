@@ -0,0 +1,99 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.List;
+import java.util.concurrent.*;
+import javax.management.*;
+
+public class RegistryMetricsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    public void disableMetrics() {
+        RegistryMetrics.disable();
+        RegistryMetrics.reset();
+    }
+
+    private Person person(Path registry, String id, String address, String birthday) {
+        Person person = new Person(id, "Tom", "Smith", address, birthday);
+        person.setFilePath(registry.toString());
+        return person;
+    }
+
+    // Test Case 1 - operations, failure reasons and skipped updates are counted
+    @Test
+    public void testOperationsAreCounted() throws Exception {
+        RegistryMetrics.enable();
+        RegistryMetrics.reset();
+        Path registry = tempDir.resolve("persons.txt");
+        Files.write(registry, List.of("26cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false"));
+
+        assertTrue(person(registry, "77zz%%rrLL", "22|King St|Melbourne|Victoria|Australia", "15-03-1980").addPerson());
+        assertFalse(person(registry, "1245", "22|King St|Melbourne|Victoria|Australia", "15-03-1980").addPerson());
+        assertFalse(person(registry, "77zz%%rrLL", "22|King St|Melbourne|NSW|Australia", "15-03-1980").addPerson());
+
+        Person evenID = person(registry, "28cc$%xyER", "1|Elizabeth Street|Melbourne|Victoria|Australia", "12-11-1989");
+        evenID.setOldPersonID("26cc$%xyER");
+        assertFalse(evenID.updatePersonalDetails());
+        assertEquals("Success", evenID.addDemeritPoints("26cc$%xyER", 3, "01-06-2024"));
+
+        RegistryMetrics.OperationMXBean add = RegistryMetrics.operation(RegistryMetrics.Operation.ADD_PERSON);
+        assertEquals(3, add.getCount());
+        assertEquals(2, add.getFailures());
+        assertTrue(add.getMaxMicros() > 0);
+        assertTrue(add.getP50Micros() <= add.getP99Micros());
+        assertTrue(add.getP99Micros() <= add.getMaxMicros());
+
+        assertEquals(1, RegistryMetrics.operation(RegistryMetrics.Operation.UPDATE_PERSONAL_DETAILS).getFailures());
+        assertEquals(1, RegistryMetrics.operation(RegistryMetrics.Operation.ADD_DEMERIT_POINTS).getRecordsScanned());
+        assertEquals(1L, RegistryMetrics.registry().getValidationFailures().get("ID_LENGTH"));
+        assertEquals(1L, RegistryMetrics.registry().getValidationFailures().get("ADDRESS_STATE"));
+        assertEquals(1L, RegistryMetrics.registry().getSkippedUpdates().get("EVEN_ID_CHANGE"));
+        assertTrue(RegistryMetrics.registry().getBytesWritten() > 0);
+        assertTrue(RegistryMetrics.dump().contains("addDemeritPoints count=1 failures=0"));
+
+        // the same numbers are published through JMX
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(3L, server.getAttribute(new ObjectName("com.roadregistry:type=Operation,name=addPerson"), "Count"));
+        assertEquals(RegistryMetrics.registry().getBytesWritten(), server.getAttribute(new ObjectName("com.roadregistry:type=Registry"), "BytesWritten"));
+    }
+
+    // Test Case 2 - nothing is recorded while metrics are off
+    @Test
+    public void testDisabledRecordsNothing() throws IOException {
+        RegistryMetrics.disable();
+        RegistryMetrics.reset();
+        Path registry = tempDir.resolve("persons.txt");
+        Files.write(registry, List.of());
+
+        assertTrue(person(registry, "77zz%%rrLL", "22|King St|Melbourne|Victoria|Australia", "15-03-1980").addPerson());
+        assertFalse(person(registry, "1245", "22|King St|Melbourne|Victoria|Australia", "15-03-1980").addPerson());
+
+        assertEquals(0, RegistryMetrics.operation(RegistryMetrics.Operation.ADD_PERSON).getCount());
+        assertTrue(RegistryMetrics.registry().getValidationFailures().isEmpty());
+        assertEquals(0, RegistryMetrics.registry().getBytesWritten());
+    }
+
+    // Test Case 3 - the periodic dump appends the text form to a file
+    @Test
+    public void testPeriodicDump() throws Exception {
+        Path file = tempDir.resolve("metrics.txt");
+        CountDownLatch dumped = new CountDownLatch(1);
+        RegistryMetrics.onDump(dumped::countDown);
+        RegistryMetrics.startDump(file, 1);
+        try {
+            assertTrue(dumped.await(10, TimeUnit.SECONDS));
+        } finally {
+            RegistryMetrics.stopDump();
+            RegistryMetrics.onDump(null);
+        }
+        assertTrue(Files.readString(file).contains("addPerson count="));
+    }
+}
@@ -0,0 +1,165 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+public class RegistryServerTest {
+
+    @TempDir
+    Path tempDir;
+
+    // Test Case 1 - pipelined requests are all answered, in the order they were sent
+    @Test
+    public void testPipelinedRequests() throws Exception {
+        Path registry = tempDir.resolve("persons.txt");
+        Files.write(registry, List.of("36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false"));
+
+        String date = LocalDate.now().minusMonths(1).format(DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+
+        try (RegistryServer server = new RegistryServer(registry.toString(), 0).start();
+             Socket socket = new Socket("localhost", server.port())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            writer.write(String.join("\n",
+                    "PING",
+                    "GET\t36cc$%xyER",
+                    "ADD\t1245\tPasan\tWije\t123|La Trobe St|Melbourne|Victoria|Australia\t15-11-1995",
+                    "DEMERIT\t36cc$%xyER\t3\t" + date,
+                    "DEMERIT\t36cc$%xyER\tthree\t" + date,
+                    "GET\tunknownID",
+                    "ADD\tmissing fields",
+                    "DELETE\t36cc$%xyER") + "\n");
+            writer.flush();
+
+            assertEquals("OK", reader.readLine());
+            assertEquals("OK\t36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false", reader.readLine());
+            assertEquals("FAILED", reader.readLine());
+            assertEquals("OK", reader.readLine());
+            assertEquals("ERROR points must be a number", reader.readLine());
+            assertEquals("NOT_FOUND", reader.readLine());
+            assertEquals("ERROR ADD takes 5 fields", reader.readLine());
+            assertEquals("ERROR unknown request DELETE", reader.readLine());
+        }
+        assertEquals(date + ":3", PersonRepository.forFile(registry.toString()).find("36cc$%xyER").getDemerits());
+    }
+
+    // Test Case 2 - the load generator gets an answer for every request it sends
+    @Test
+    public void testLoadGenerator() throws Exception {
+        Path registry = tempDir.resolve("load.txt");
+        try (RegistryServer server = new RegistryServer(registry.toString(), 0).start()) {
+            RegistryLoadGenerator.Report report = new RegistryLoadGenerator("localhost", server.port()).run(4, 500, 16);
+
+            assertEquals(2000, report.requests());
+            assertEquals(0, report.failed());
+            assertTrue(report.p50Nanos() <= report.p99Nanos());
+            assertTrue(report.requestsPerSecond() > 0);
+        }
+        assertEquals(200, PersonRepository.forFile(registry.toString()).size());
+    }
+
+    // Sends all requests in one write and returns the response lines
+    private static List<String> pipeline(RegistryServer server, List<String> requests) throws IOException {
+        try (Socket socket = new Socket("localhost", server.port())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            writer.write(String.join("\n", requests) + "\n");
+            writer.flush();
+            List<String> responses = new java.util.ArrayList<>();
+            for (int i = 0; i < requests.size(); i++) {
+                responses.add(reader.readLine());
+            }
+            return responses;
+        }
+    }
+
+    // Adds, renames and fines a person and looks them up after each step, all pipelined
+    private static List<String> readYourWrites(RegistryServer server, String date) throws IOException {
+        return pipeline(server, List.of(
+                "ADD\t56uu$$ddGG\tMia\tChen\t3|John St|Melbourne|Victoria|Australia\t01-01-1990",
+                "GET\t56uu$$ddGG",
+                "UPDATE\t56uu$$ddGG\t58uu$$ddGG\tMia\tChen\t3|John St|Melbourne|Victoria|Australia\t01-01-1990",
+                "GET\t58uu$$ddGG",
+                "DEMERIT\t58uu$$ddGG\t3\t" + date,
+                "GET\t58uu$$ddGG",
+                "GET\t56uu$$ddGG"));
+    }
+
+    private static void assertReadYourWrites(List<String> responses, String date) {
+        String row = "58uu$$ddGG,Mia,Chen,3|John St|Melbourne|Victoria|Australia,01-01-1990,false";
+        assertEquals(List.of("OK", "OK\t56uu$$ddGG,Mia,Chen,3|John St|Melbourne|Victoria|Australia,01-01-1990,false",
+                "OK", "OK\t" + row + ",", "OK", "OK\t" + row + "," + date + ":3", "NOT_FOUND"), responses);
+    }
+
+    // Test Case 3 - pipelined requests on one connection see the changes of the ones before them,
+    // in streaming mode and on a sharded registry
+    @Test
+    public void testPipelinedReadYourWrites() throws IOException {
+        String date = LocalDate.now().minusMonths(1).format(DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+
+        Path streamed = tempDir.resolve("streamed.txt");
+        Files.createFile(streamed);
+        try (RegistryServer server = new RegistryServer(streamed.toString(), 0)) {
+            server.setStreaming(true);
+            server.start();
+            assertReadYourWrites(readYourWrites(server, date), date);
+        }
+
+        ShardedRegistry sharded = ShardedRegistry.open(tempDir.resolve("sharded").toString(), 4);
+        try (RegistryServer server = new RegistryServer(tempDir.resolve("unused.txt").toString(), 0)) {
+            server.setShardedRegistry(sharded);
+            server.start();
+            assertReadYourWrites(readYourWrites(server, date), date);
+        }
+        assertNull(PersonRepository.forFile(tempDir.resolve("unused.txt").toString()).find("58uu$$ddGG"));
+    }
+
+    // Test Case 4 - a second run of the same generator adds new people, so a warm-up does not
+    // turn the measured adds into duplicates
+    @Test
+    public void testRunsUseTheirOwnPeople() throws Exception {
+        Path registry = tempDir.resolve("load.txt");
+        try (RegistryServer server = new RegistryServer(registry.toString(), 0).start()) {
+            RegistryLoadGenerator generator = new RegistryLoadGenerator("localhost", server.port());
+            assertEquals(0, generator.run(2, 100, 8).failed());
+            assertEquals(0, generator.run(2, 100, 8).failed());
+        }
+        assertEquals(40, PersonRepository.forFile(registry.toString()).size());
+    }
+
+    // Test Case 5 - a connection dropped by the server ends the run, the requests without a
+    // response count as failed
+    @Test
+    public void testDroppedConnection() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread.ofVirtual().start(() -> {
+                try (Socket socket = server.accept()) {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                    for (int i = 0; i < 3; i++) {
+                        reader.readLine();
+                        writer.write("OK\n");
+                    }
+                    writer.flush();
+                } catch (IOException e) {
+                    // the test fails on the report
+                }
+            });
+
+            RegistryLoadGenerator.Report report = assertTimeoutPreemptively(Duration.ofSeconds(30),
+                    () -> new RegistryLoadGenerator("localhost", server.getLocalPort()).run(1, 100, 8));
+            assertEquals(100, report.requests());
+            assertEquals(97, report.failed());
+            assertTrue(report.p50Nanos() > 0);
+        }
+    }
+}
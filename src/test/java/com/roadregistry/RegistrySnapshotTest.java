@@ -0,0 +1,115 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RegistrySnapshotTest {
+
+    private static final String DANUSH = "36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false";
+    private static final String MIA = "56uu$$ddGG,Mia,Chen,3|John St|Melbourne|Victoria|Australia,01-01-2006,true,01-01-2024:3";
+
+    @TempDir
+    Path tempDir;
+
+    private Path writeRegistry(String... lines) throws IOException {
+        Path file = tempDir.resolve("persons.txt");
+        Files.write(file, List.of(lines));
+        return file;
+    }
+
+    private static Path snapshotOf(Path registry) {
+        return Path.of(registry + ".snap");
+    }
+
+    // Test Case 1 - rows come back from a snapshot with the same fields as from the file
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path registry = writeRegistry(DANUSH, MIA, "45ab$%xyER,,,,,");
+        List<PersonRecord> rows = new ArrayList<>();
+        MappedPersonFile.forEach(registry, rows::add);
+        File file = registry.toFile();
+        assertTrue(RegistrySnapshot.write(rows, file.length(), file.lastModified(), snapshotOf(registry)));
+
+        List<PersonRecord> read = RegistrySnapshot.read(snapshotOf(registry), file.length(), file.lastModified());
+
+        assertEquals(3, read.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(rows.get(i).getLine(), read.get(i).getLine());
+            assertEquals(rows.get(i).fieldCount(), read.get(i).fieldCount());
+            for (int field = 0; field < rows.get(i).fieldCount(); field++) {
+                assertEquals(rows.get(i).field(field), read.get(i).field(field));
+            }
+        }
+    }
+
+    // Test Case 2 - a snapshot that matches the registry file is loaded instead of the file
+    @Test
+    public void testLoadsFromSnapshot() throws IOException {
+        Path registry = writeRegistry(DANUSH);
+        File file = registry.toFile();
+        // same length as the file, so only a load from the snapshot gives the other first name
+        String renamed = DANUSH.replace("Danush", "Dhanus");
+        RegistrySnapshot.write(List.of(PersonRecord.parse(renamed)), file.length(), file.lastModified(), snapshotOf(registry));
+
+        assertEquals("Dhanus", PersonRepository.forFile(registry.toString()).find("36cc$%xyER").getFirstName());
+    }
+
+    // Test Case 3 - a damaged or stale snapshot is ignored and the file is read instead
+    @Test
+    public void testFallsBackToFile() throws IOException {
+        Path registry = writeRegistry(DANUSH);
+        File file = registry.toFile();
+        String renamed = DANUSH.replace("Danush", "Dhanus");
+
+        RegistrySnapshot.write(List.of(PersonRecord.parse(renamed)), file.length(), file.lastModified(), snapshotOf(registry));
+        byte[] bytes = Files.readAllBytes(snapshotOf(registry));
+        bytes[bytes.length - 3] ^= 1;
+        Files.write(snapshotOf(registry), bytes);
+        assertNull(RegistrySnapshot.read(snapshotOf(registry), file.length(), file.lastModified()));
+        assertEquals("Danush", PersonRepository.forFile(registry.toString()).find("36cc$%xyER").getFirstName());
+        PersonRepository.evict(registry.toString());
+
+        RegistrySnapshot.write(List.of(PersonRecord.parse(renamed)), file.length(), file.lastModified() - 1000, snapshotOf(registry));
+        assertEquals("Danush", PersonRepository.forFile(registry.toString()).find("36cc$%xyER").getFirstName());
+    }
+
+    // Test Case 4 - compaction writes a snapshot and later changes are replayed on top of it
+    @Test
+    public void testChangesAfterSnapshotAreReplayed() throws IOException {
+        Path registry = writeRegistry(DANUSH);
+        PersonRepository repository = PersonRepository.forFile(registry.toString());
+        repository.append(PersonRecord.parse(MIA));
+        repository.compact();
+        assertTrue(Files.exists(snapshotOf(registry)));
+
+        repository.remove(repository.rowsOf("36cc$%xyER")[0]);
+        repository.append(PersonRecord.parse("45ab$%xyER,Tom,Smith,2|King St|Melbourne|Victoria|Australia,15-03-1985,false"));
+        PersonRepository.evict(registry.toString());
+
+        PersonRepository reloaded = PersonRepository.forFile(registry.toString());
+        assertEquals(3, reloaded.size());
+        assertNull(reloaded.find("36cc$%xyER"));
+        assertEquals("Mia", reloaded.find("56uu$$ddGG").getFirstName());
+        assertEquals("Tom", reloaded.find("45ab$%xyER").getFirstName());
+    }
+
+    // Test Case 5 - a checkpoint writes the snapshot of a registry that was loaded from the file
+    @Test
+    public void testCheckpointWritesSnapshot() throws IOException {
+        Path registry = writeRegistry(DANUSH, MIA);
+        PersonRepository repository = PersonRepository.forFile(registry.toString());
+        assertEquals(2, repository.size());
+        assertFalse(Files.exists(snapshotOf(registry)));
+
+        repository.checkpoint();
+
+        File file = registry.toFile();
+        List<PersonRecord> read = RegistrySnapshot.read(snapshotOf(registry), file.length(), file.lastModified());
+        assertEquals(List.of(DANUSH, MIA), read.stream().map(PersonRecord::getLine).toList());
+    }
+}
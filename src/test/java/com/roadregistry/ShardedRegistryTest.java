@@ -0,0 +1,110 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+public class ShardedRegistryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final String ADDRESS = "22|King St|Melbourne|Victoria|Australia";
+
+    private static String id(int n) {
+        return String.format("3%dxy$%%%02dAB", n % 8 + 2, n);
+    }
+
+    private Person person(ShardedRegistry registry, String id) {
+        Person person = new Person(id, "Tom", "Smith", ADDRESS, "15-03-1980");
+        person.setShardedRegistry(registry);
+        return person;
+    }
+
+    // Test Case 1 - people are stored in the shard of their ID and found there again
+    @Test
+    public void testRoutingByID() throws IOException {
+        String directory = tempDir.resolve("registry").toString();
+        ShardedRegistry registry = ShardedRegistry.open(directory, 4);
+        for (int n = 0; n < 40; n++) {
+            assertTrue(person(registry, id(n)).addPerson());
+        }
+        assertFalse(person(registry, id(7)).addPerson());
+        String date = LocalDate.now().minusMonths(1).format(DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+        assertEquals("Success", person(registry, id(7)).addDemeritPoints(id(7), 3, date));
+        registry.compact();
+
+        assertEquals(40, registry.size());
+        int used = 0;
+        for (int shard = 0; shard < 4; shard++) {
+            for (String line : Files.readAllLines(Path.of(directory, "shard-" + shard + ".txt"))) {
+                assertEquals(shard, registry.shardOf(PersonRecord.parse(line).getPersonID()));
+            }
+            if (Files.size(Path.of(directory, "shard-" + shard + ".txt")) > 0) used++;
+        }
+        assertTrue(used > 1);
+        assertEquals(date + ":3", registry.find(id(7)).getDemerits());
+        assertThrows(IOException.class, () -> {
+            ShardedRegistry.evict(directory);
+            ShardedRegistry.open(directory, 8);
+        });
+    }
+
+    // Test Case 2 - an ID change moves the person to the shard of the new ID
+    @Test
+    public void testIDChangeMovesBetweenShards() throws IOException {
+        String directory = tempDir.resolve("registry").toString();
+        ShardedRegistry registry = ShardedRegistry.open(directory, 4);
+        String oldID = "35cc$%xyER";
+        String newID = oldID;
+        for (int n = 0; registry.shardOf(newID) == registry.shardOf(oldID); n++) {
+            newID = "3" + (n % 8 + 2) + "cc$%" + (char) ('a' + n / 8) + "yER";
+        }
+        assertTrue(person(registry, oldID).addPerson());
+
+        Person renamed = person(registry, newID);
+        renamed.setOldPersonID(oldID);
+        assertTrue(renamed.updatePersonalDetails());
+        assertNull(registry.find(oldID));
+        assertEquals(newID, registry.find(newID).getPersonID());
+
+        // the move survives a restart and a compaction
+        ShardedRegistry.evict(directory);
+        ShardedRegistry reopened = ShardedRegistry.open(directory, 4);
+        assertNull(reopened.find(oldID));
+        assertNotNull(reopened.find(newID));
+        reopened.compact();
+        assertEquals(1, reopened.size());
+        assertFalse(Files.exists(Path.of(directory, "moves.journal")));
+    }
+
+    // Test Case 3 - a move cut short after the journal entry is finished when the registry is opened
+    @Test
+    public void testUnfinishedMoveIsRecovered() throws IOException {
+        String directory = tempDir.resolve("registry").toString();
+        ShardedRegistry registry = ShardedRegistry.open(directory, 2);
+        String oldID = "35cc$%xyER";
+        String newID = oldID;
+        for (int n = 0; registry.shardOf(newID) == registry.shardOf(oldID); n++) {
+            newID = "3" + (n % 8 + 2) + "cc$%" + (char) ('a' + n / 8) + "yER";
+        }
+        assertTrue(person(registry, oldID).addPerson());
+        PersonRecord original = registry.find(oldID);
+        PersonRecord updated = PersonRecord.of(newID, "Tom", "Smith", ADDRESS, "15-03-1980", "false");
+
+        // crash after the record reached the new shard but before it left the old one
+        registry.beginMove(registry.shardOf(oldID), registry.shardOf(newID), original, updated);
+        registry.shardFor(newID).append(updated);
+        ShardedRegistry.evict(directory);
+
+        ShardedRegistry reopened = ShardedRegistry.open(directory, 2);
+        assertNull(reopened.find(oldID));
+        assertEquals(1, reopened.shardFor(newID).rowsOf(newID).length);
+        reopened.compact();
+        assertEquals(1, reopened.size());
+    }
+}
@@ -0,0 +1,128 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+public class StreamingRegistryFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final List<String> REGISTRY = List.of(
+            "36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false",
+            "",
+            "  56uu$$ddGG,Mia,Chen,3|John St|Melbourne|Victoria|Australia,01-06-2010,false  ",
+            "77zz%%rrLL,Tom,Smith,22|King St|Melbourne|Victoria|Australia,15-03-1980,false");
+
+    // Runs the same updates and offences against a registry, streamed or in memory
+    private List<String> run(Path registry, boolean streaming) throws IOException {
+        Files.write(registry, REGISTRY);
+        String recent = LocalDate.now().minusMonths(1).format(DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+
+        Person rename = new Person("37cc$%xyER", "Danush", "Bala", "1|Elizabeth Street|Melbourne|Victoria|Australia", "12-11-1989");
+        rename.setFilePath(registry.toString());
+        rename.setStreaming(streaming);
+        rename.setOldPersonID("36cc$%xyER");
+        assertTrue(rename.updatePersonalDetails());
+
+        // under 18 can't change address
+        Person move = new Person("56uu$$ddGG", "Mia", "Chen", "9|Ocean Ave|Geelong|Victoria|Australia", "01-06-2010");
+        move.setFilePath(registry.toString());
+        move.setStreaming(streaming);
+        assertFalse(move.updatePersonalDetails());
+
+        assertEquals("Success", move.addDemeritPoints("56uu$$ddGG", 4, recent));
+        assertEquals("Success", move.addDemeritPoints("56uu$$ddGG", 3, "01-01-2024"));
+        assertEquals("Failed", move.addDemeritPoints("99unknown", 3, recent));
+        assertEquals("Failed", move.addDemeritPoints("77zz%%rrLL", 7, recent));
+
+        PersonRepository.forFile(registry.toString()).compact();
+        return Files.readAllLines(registry);
+    }
+
+    // Test Case 1 - streaming gives exactly the same registry as the in-memory path
+    @Test
+    public void testSameResultAsRepository() throws IOException {
+        List<String> streamed = run(tempDir.resolve("streamed.txt"), true);
+        List<String> inMemory = run(tempDir.resolve("memory.txt"), false);
+
+        assertEquals(inMemory, streamed);
+        assertEquals(3, streamed.size());
+        assertTrue(streamed.get(0).startsWith("37cc$%xyER,"));
+        assertTrue(streamed.get(1).startsWith("56uu$$ddGG,Mia,Chen,3|John St|Melbourne|Victoria|Australia,01-06-2010,"));
+    }
+
+    // Test Case 2 - only the first row is changed with firstOnly, and nothing is written without a change
+    @Test
+    public void testFirstOnlyAndNoChange() throws IOException {
+        Path registry = tempDir.resolve("persons.txt");
+        Files.write(registry, List.of("36cc$%xyER,A,B,C,D,false", "36cc$%xyER,E,F,G,H,false", "77zz%%rrLL,I,J,K,L,false"));
+
+        int changed = StreamingRegistryFile.update(registry.toString(), "36cc$%xyER",
+                record -> PersonRecord.of(record.getPersonID(), "X", "X", "X", "X", "true"), true);
+        assertEquals(1, changed);
+        assertEquals(List.of("36cc$%xyER,X,X,X,X,true", "36cc$%xyER,E,F,G,H,false", "77zz%%rrLL,I,J,K,L,false"), Files.readAllLines(registry));
+
+        long modified = Files.getLastModifiedTime(registry).toMillis();
+        assertEquals(0, StreamingRegistryFile.update(registry.toString(), "36cc$%xyER", record -> null, false));
+        assertEquals(modified, Files.getLastModifiedTime(registry).toMillis());
+        assertFalse(Files.exists(tempDir.resolve("persons.txt.stream.tmp")));
+    }
+
+    // Test Case 3 - a lookup scans the mapped file without loading the registry, and an update of
+    // an unknown ID does not copy the file
+    @Test
+    public void testFindWithoutLoading() throws IOException {
+        Path registry = tempDir.resolve("persons.txt");
+        Files.write(registry, REGISTRY);
+        RegistryMetrics.enable();
+        long rowsRead = RegistryMetrics.registry().getRowsRead();
+
+        assertEquals(REGISTRY.get(2).trim(), StreamingRegistryFile.find(registry.toString(), "56uu$$ddGG").getLine());
+        assertNull(StreamingRegistryFile.find(registry.toString(), "99unknown"));
+        assertEquals(0, StreamingRegistryFile.update(registry.toString(), "99unknown", record -> record, false));
+        assertEquals(rowsRead, RegistryMetrics.registry().getRowsRead());
+
+        // a change still in the write-ahead log is found as well
+        Person person = new Person("22aa!!rrYY", "Nina", "Brown", "55|Bourke St|Melbourne|Victoria|Australia", "15-04-2000");
+        person.setFilePath(registry.toString());
+        assertTrue(person.addPerson());
+        assertEquals("Nina", StreamingRegistryFile.find(registry.toString(), "22aa!!rrYY").getFirstName());
+        RegistryMetrics.disable();
+    }
+
+    // Test Case 4 - adding a person in streaming mode appends to the file without loading the rows
+    @Test
+    public void testAddWithoutLoading() throws IOException {
+        Path registry = tempDir.resolve("persons.txt");
+        List<String> rows = new java.util.ArrayList<>();
+        for (int n = 0; n < 1000; n++) {
+            rows.add(String.format("%02dcc$%%xy%02d,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false", n % 80 + 20, n % 100));
+        }
+        // the last row has no line break
+        Files.writeString(registry, String.join("\n", rows));
+        RegistryMetrics.enable();
+        long rowsRead = RegistryMetrics.registry().getRowsRead();
+
+        Person person = new Person("22aa!!rrYY", "Nina", "Brown", "55|Bourke St|Melbourne|Victoria|Australia", "15-04-2000");
+        person.setFilePath(registry.toString());
+        person.setStreaming(true);
+        assertTrue(person.addPerson());
+        assertFalse(person.addPerson());
+        assertEquals("Nina", person.lookup("22aa!!rrYY").getFirstName());
+        assertEquals(rowsRead, RegistryMetrics.registry().getRowsRead());
+        RegistryMetrics.disable();
+
+        List<String> stored = Files.readAllLines(registry);
+        assertEquals(1001, stored.size());
+        assertEquals(rows.get(999), stored.get(999));
+        assertEquals("22aa!!rrYY,Nina,Brown,55|Bourke St|Melbourne|Victoria|Australia,15-04-2000,false", stored.get(1000));
+        assertEquals(1001, PersonRepository.forFile(registry.toString()).size());
+    }
+}
@@ -0,0 +1,110 @@
+package com.roadregistry;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class SuspensionEngineTest {
+
+    @TempDir
+    Path tempDir;
+
+    // Test Case 1 - a person is un-suspended on the tick after their old offences leave the window
+    @Test
+    public void testUnsuspendWhenOffencesExpire() throws IOException {
+        Path registry = tempDir.resolve("persons.txt");
+        Files.write(registry, List.of(
+                "77zz%%rrLL,Tom,Smith,22|King St|Melbourne|Victoria|Australia,15-03-1980,true,10-01-2023:6;20-01-2023:6;05-06-2024:2",
+                "36cc$%xyER,Danush,Bala,1|Elizabeth Street|Melbourne|Victoria|Australia,12-11-1989,false"));
+        SuspensionEngine engine = SuspensionEngine.forFile(registry.toString());
+
+        assertEquals(0, engine.tick(LocalDate.of(2025, 1, 9)));
+        assertEquals(14, engine.recentPoints(0));
+
+        // 10-01-2023 leaves the window, 8 points are left
+        assertEquals(1, engine.tick(LocalDate.of(2025, 1, 10)));
+        assertEquals(8, engine.recentPoints(0));
+        PersonRecord record = PersonRepository.forFile(registry.toString()).find("77zz%%rrLL");
+        assertFalse(record.isSuspended());
+        assertEquals("10-01-2023:6;20-01-2023:6;05-06-2024:2", record.getDemerits());
+
+        // the result matches the full calculation done by addDemeritPoints
+        assertEquals(DemeritHistory.parse(record.getDemerits()).recentPoints(LocalDate.of(2025, 1, 10)), engine.recentPoints(0));
+    }
+
+    // Test Case 2 - offences added after the engine started are followed, and a person under 21
+    // is re-checked when the new year makes them 21
+    @Test
+    public void testFollowsChangesAndAge() throws IOException {
+        Path registry = tempDir.resolve("persons.txt");
+        Files.write(registry, List.of("56uu$$ddGG,Mia,Chen,3|John St|Melbourne|Victoria|Australia,01-06-2005,false"));
+        SuspensionEngine engine = SuspensionEngine.forFile(registry.toString());
+        engine.tick(LocalDate.of(2025, 12, 1));
+
+        PersonRepository repository = PersonRepository.forFile(registry.toString());
+        repository.set(0, PersonRecord.parse("56uu$$ddGG,Mia,Chen,3|John St|Melbourne|Victoria|Australia,01-06-2005,false,01-11-2025:4;15-11-2025:4"));
+        assertEquals(8, engine.recentPoints(0));
+
+        // a stored status is only changed for people the engine has a reason to look at
+        assertEquals(0, engine.tick(LocalDate.of(2025, 12, 2)));
+        // turning 21 raises the limit to 12, 8 points are still within it
+        repository.set(0, PersonRecord.parse("56uu$$ddGG,Mia,Chen,3|John St|Melbourne|Victoria|Australia,01-06-2005,true,01-11-2025:4;15-11-2025:4"));
+        assertEquals(1, engine.tick(LocalDate.of(2026, 1, 1)));
+        assertFalse(repository.find("56uu$$ddGG").isSuspended());
+    }
+
+    // Test Case 3 - an offence on 29 February counts until the end of 28 February two years later
+    @Test
+    public void testLeapDayExpiry() {
+        int leapDay = (int) LocalDate.of(2024, 2, 29).toEpochDay();
+        assertEquals(LocalDate.of(2026, 3, 1).toEpochDay(), SuspensionEngine.expiryDay(leapDay));
+
+        DemeritHistory history = new DemeritHistory();
+        history.put(leapDay, 3);
+        assertEquals(3, history.recentPoints(LocalDate.of(2026, 2, 28)));
+        assertEquals(0, history.recentPoints(LocalDate.of(2026, 3, 1)));
+    }
+
+    // Test Case 4 - a tick racing with updatePersonalDetails on the same person is not overwritten
+    // by the status the update copied from the row it read
+    @Test
+    public void testTickDoesNotRaceWithUpdate() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 50; round++) {
+                Path registry = tempDir.resolve("persons" + round + ".txt");
+                Files.write(registry, List.of(
+                        "77zz%%rrLL,Tom,Smith,22|King St|Melbourne|Victoria|Australia,15-03-1980,true,10-01-2023:6;20-01-2023:6;05-06-2024:2"));
+                SuspensionEngine engine = SuspensionEngine.forFile(registry.toString());
+                engine.tick(LocalDate.of(2025, 1, 9));
+
+                CountDownLatch start = new CountDownLatch(1);
+                Future<?> updates = pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 20; i++) {
+                        Person rename = new Person("77zz%%rrLL", "Tom" + (char) ('a' + i), "Smith", "22|King St|Melbourne|Victoria|Australia", "15-03-1980");
+                        rename.setFilePath(registry.toString());
+                        assertTrue(rename.updatePersonalDetails());
+                    }
+                    return null;
+                });
+                Future<Integer> tick = pool.submit(() -> {
+                    start.await();
+                    return engine.tick(LocalDate.of(2025, 1, 10));
+                });
+                start.countDown();
+                updates.get(60, TimeUnit.SECONDS);
+                assertEquals(1, tick.get(60, TimeUnit.SECONDS));
+
+                assertFalse(PersonRepository.forFile(registry.toString()).find("77zz%%rrLL").isSuspended());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}